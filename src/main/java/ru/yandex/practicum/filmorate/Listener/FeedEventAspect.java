@@ -3,29 +3,67 @@ package ru.yandex.practicum.filmorate.Listener;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import org.aspectj.lang.ProceedingJoinPoint;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.annotations.EventListen;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.FeedEvent;
 import ru.yandex.practicum.filmorate.model.Review;
 import ru.yandex.practicum.filmorate.service.FeedEventPublisher;
+import ru.yandex.practicum.filmorate.storage.feed.FeedStorage;
+import ru.yandex.practicum.filmorate.storage.feed.FeedWriteMode;
 import ru.yandex.practicum.filmorate.storage.review.ReviewStorage;
 
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Optional;
+
 @Aspect
 @Component
 public class FeedEventAspect {
     private final FeedEventPublisher eventPublisher;
     private final ReviewStorage reviewStorage;
+    private final FeedStorage feedStorage;
+    private final TransactionTemplate transactionTemplate;
+    private final FeedWriteMode writeMode;
 
-    public FeedEventAspect(FeedEventPublisher eventPublisher, @Qualifier("ReviewDbStorage") ReviewStorage reviewStorage) {
+    public FeedEventAspect(FeedEventPublisher eventPublisher,
+                           @Qualifier("ReviewDbStorage") ReviewStorage reviewStorage,
+                           @Qualifier("FeedDbStorage") FeedStorage feedStorage,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${filmorate.feed.write-mode:transactional}") FeedWriteMode writeMode) {
         this.eventPublisher = eventPublisher;
         this.reviewStorage = reviewStorage;
+        this.feedStorage = feedStorage;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.writeMode = writeMode;
     }
 
     @Around("@annotation(el)")
     public Object handleFeedEvent(ProceedingJoinPoint joinPoint, EventListen el) throws Throwable {
+        if (writeMode == FeedWriteMode.WRITE_BEHIND) {
+            return proceedAndRecord(joinPoint, el);
+        }
+        // Изменение и строка ленты фиксируются одной транзакцией, порядок задает последовательность event_id
+        try {
+            return transactionTemplate.execute(status -> {
+                try {
+                    return proceedAndRecord(joinPoint, el);
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new UndeclaredThrowableException(e);
+                }
+            });
+        } catch (UndeclaredThrowableException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Object proceedAndRecord(ProceedingJoinPoint joinPoint, EventListen el) throws Throwable {
         long userId;
         long entityId;
         String eventType = el.eventType();
@@ -43,6 +81,10 @@ public class FeedEventAspect {
             }
         } else {
             result = joinPoint.proceed();
+            // Операция вернула false или пустой Optional - состояние не изменилось, событие в ленту не пишем
+            if (Boolean.FALSE.equals(result) || Optional.empty().equals(result)) {
+                return result;
+            }
 
             if (!el.argIsEvent()) {
                 userId = ((Number) args[el.userIdArgIndex()]).longValue();
@@ -62,7 +104,11 @@ public class FeedEventAspect {
                 .timestamp(System.currentTimeMillis())
                 .build();
 
-        eventPublisher.publish(event);
+        if (writeMode == FeedWriteMode.WRITE_BEHIND) {
+            eventPublisher.publish(event);
+        } else {
+            feedStorage.addEvent(event);
+        }
 
         return result;
     }
@@ -0,0 +1,11 @@
+package ru.yandex.practicum.filmorate.annotations;
+
+import java.lang.annotation.*;
+
+// Ограничение времени каждого SQL-запроса, выполняемого при обработке эндпоинта, вместо общего значения
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface QueryTimeout {
+    int seconds();
+}
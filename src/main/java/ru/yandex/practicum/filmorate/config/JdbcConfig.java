@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+
+// Размер пула и ожидание соединения задаются свойствами spring.datasource.hikari.*,
+// метрики пула hikaricp.connections.* публикует actuator
+@Configuration
+public class JdbcConfig implements WebMvcConfigurer {
+
+    @Bean
+    public JdbcTemplate jdbcTemplate(DataSource dataSource,
+                                     @Value("${filmorate.jdbc.query-timeout-seconds:10}") int queryTimeoutSeconds) {
+        return new TimeoutAwareJdbcTemplate(dataSource, queryTimeoutSeconds);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new QueryTimeoutInterceptor());
+    }
+}
@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import ru.yandex.practicum.filmorate.annotations.QueryTimeout;
+
+// Переносит @QueryTimeout с метода контроллера на запросы, выполняемые в потоке обработки.
+// При асинхронной обработке afterCompletion в этом потоке не вызывается, поэтому переопределение
+// снимается еще и в afterConcurrentHandlingStarted, иначе оно достанется следующему запросу из пула
+public class QueryTimeoutInterceptor implements AsyncHandlerInterceptor {
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (handler instanceof HandlerMethod method) {
+            QueryTimeout timeout = method.getMethodAnnotation(QueryTimeout.class);
+            if (timeout != null) {
+                TimeoutAwareJdbcTemplate.overrideTimeout(timeout.seconds());
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        TimeoutAwareJdbcTemplate.clearTimeoutOverride();
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        TimeoutAwareJdbcTemplate.clearTimeoutOverride();
+    }
+}
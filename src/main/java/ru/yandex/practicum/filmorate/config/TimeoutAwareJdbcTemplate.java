@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate.config;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// JdbcTemplate с общим таймаутом запросов, который можно переопределить для текущего потока.
+// Таймаут открытой транзакции, если он короче, по-прежнему имеет приоритет
+public class TimeoutAwareJdbcTemplate extends JdbcTemplate {
+    private static final ThreadLocal<Integer> TIMEOUT_OVERRIDE = new ThreadLocal<>();
+
+    public TimeoutAwareJdbcTemplate(DataSource dataSource, int queryTimeoutSeconds) {
+        super(dataSource);
+        setQueryTimeout(queryTimeoutSeconds);
+    }
+
+    public static void overrideTimeout(int seconds) {
+        TIMEOUT_OVERRIDE.set(seconds);
+    }
+
+    public static void clearTimeoutOverride() {
+        TIMEOUT_OVERRIDE.remove();
+    }
+
+    @Override
+    protected void applyStatementSettings(Statement stmt) throws SQLException {
+        super.applyStatementSettings(stmt);
+        Integer override = TIMEOUT_OVERRIDE.get();
+        if (override != null) {
+            DataSourceUtils.applyTimeout(stmt, getDataSource(), override);
+        }
+    }
+}
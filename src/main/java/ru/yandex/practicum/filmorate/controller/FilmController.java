@@ -1,14 +1,19 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.annotations.QueryTimeout;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Suggestion;
 import ru.yandex.practicum.filmorate.service.FilmService;
 import jakarta.validation.Valid;
 
-import java.util.Collection;
 import java.util.List;
 
 @RestController
@@ -16,14 +21,27 @@ import java.util.List;
 @RequiredArgsConstructor
 public class FilmController {
     private final FilmService filmService;
+    private final ObjectMapper objectMapper;
 
     @GetMapping
-    public Collection<Film> getAllFilms() {
-        return filmService.getAllFilms();
+    public ResponseEntity<StreamingResponseBody> getAllFilms() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(JsonArrayStream.of(objectMapper, filmService::streamAllFilms));
+    }
+
+    @GetMapping(params = "limit")
+    public List<Film> getFilmsPage(@RequestParam(defaultValue = "0") int afterId,
+                                   @RequestParam int limit) {
+        return filmService.getFilmsPage(afterId, limit);
     }
 
     @GetMapping("/{id}")
-    public Film getFilmById(@PathVariable int id) {
+    public Film getFilmById(@PathVariable int id, WebRequest request) {
+        // Версия читается по ключу; если у клиента она актуальна, фильм не загружается - ответ 304
+        if (request.checkNotModified(Long.toString(filmService.getFilmVersion(id)))) {
+            return null;
+        }
         return filmService.getFilmById(id);
     }
 
@@ -45,8 +63,9 @@ public class FilmController {
     }
 
     @PutMapping
-    public Film updateFilm(@Valid @RequestBody Film film) {
-        return filmService.updateFilm(film);
+    public Film updateFilm(@Valid @RequestBody Film film,
+                           @RequestParam(defaultValue = "false") boolean replaceLikes) {
+        return filmService.updateFilm(film, replaceLikes);
     }
 
     @PutMapping("/{id}/like/{userId}")
@@ -60,6 +79,7 @@ public class FilmController {
     }
 
     @GetMapping("/popular")
+    @QueryTimeout(seconds = 2)
     public List<Film> getPopularFilms(
             @RequestParam(defaultValue = "10") int count,
             @RequestParam(required = false) Integer genreId,
@@ -78,4 +98,10 @@ public class FilmController {
                                   @RequestParam String by) {
         return filmService.searchFilms(query, by);
     }
-}
\ No newline at end of file
+
+    @GetMapping("/autocomplete")
+    public List<Suggestion> autocomplete(@RequestParam String query,
+                                         @RequestParam(defaultValue = "10") int count) {
+        return filmService.autocomplete(query, count);
+    }
+}
@@ -2,27 +2,36 @@ package ru.yandex.practicum.filmorate.controller;
 
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import java.time.Duration;
 import java.util.Collection;
 
 @RestController
 @RequestMapping("/genres")
 public class GenreController {
     private final GenreStorage genreStorage;
+    private final CacheControl cacheControl;
 
-    public GenreController(@Qualifier("GenreDbStorage") GenreStorage genreStorage) {
+    // Справочник только для чтения: приложение его не меняет, строки приходят из data.sql,
+    // поэтому клиентам разрешено долго хранить ответ
+    public GenreController(@Qualifier("GenreDbStorage") GenreStorage genreStorage,
+                           @Value("${filmorate.http.reference-max-age:P1D}") Duration maxAge) {
         this.genreStorage = genreStorage;
+        this.cacheControl = CacheControl.maxAge(maxAge).cachePublic();
     }
 
     @GetMapping
-    public Collection<Genre> getAllGenres() {
-        return genreStorage.getAll();
+    public ResponseEntity<Collection<Genre>> getAllGenres() {
+        return ResponseEntity.ok().cacheControl(cacheControl).body(genreStorage.getAll());
     }
 
     @GetMapping("/{id}")
-    public Genre getGenreById(@PathVariable int id) {
-        return genreStorage.getById(id);
+    public ResponseEntity<Genre> getGenreById(@PathVariable int id) {
+        return ResponseEntity.ok().cacheControl(cacheControl).body(genreStorage.getById(id));
     }
 }
\ No newline at end of file
@@ -1,27 +1,34 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ru.yandex.practicum.filmorate.model.MpaRating;
 import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
+import java.time.Duration;
 import java.util.Collection;
 
 @RestController
 @RequestMapping("/mpa")
 public class MpaController {
     private final MpaStorage mpaStorage;
+    private final CacheControl cacheControl;
 
-    public MpaController(@Qualifier("MpaDbStorage") MpaStorage mpaStorage) {
+    public MpaController(@Qualifier("MpaDbStorage") MpaStorage mpaStorage,
+                         @Value("${filmorate.http.reference-max-age:P1D}") Duration maxAge) {
         this.mpaStorage = mpaStorage;
+        this.cacheControl = CacheControl.maxAge(maxAge).cachePublic();
     }
 
     @GetMapping
-    public Collection<MpaRating> getAllMpaRatings() {
-        return mpaStorage.getAllRatings();
+    public ResponseEntity<Collection<MpaRating>> getAllMpaRatings() {
+        return ResponseEntity.ok().cacheControl(cacheControl).body(mpaStorage.getAllRatings());
     }
 
     @GetMapping("/{id}")
-    public MpaRating getMpaRatingById(@PathVariable int id) {
-        return mpaStorage.getMpaById(id);
+    public ResponseEntity<MpaRating> getMpaRatingById(@PathVariable int id) {
+        return ResponseEntity.ok().cacheControl(cacheControl).body(mpaStorage.getMpaById(id));
     }
 }
\ No newline at end of file
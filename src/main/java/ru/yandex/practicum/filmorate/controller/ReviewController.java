@@ -6,7 +6,7 @@ import org.springframework.web.bind.annotation.*;
 import ru.yandex.practicum.filmorate.model.Review;
 import ru.yandex.practicum.filmorate.storage.review.ReviewStorage;
 
-import java.util.Collection;
+import java.util.List;
 
 @RestController
 @RequestMapping("/reviews")
@@ -38,9 +38,11 @@ public class ReviewController {
     }
 
     @GetMapping
-    public Collection<Review> getReviewsByFilmId(@RequestParam(defaultValue = "-1") int filmId,
-                                                 @RequestParam(defaultValue = "10") int count) {
-        return reviewStorage.getReviewsByFilmId(filmId, count);
+    public List<Review> getReviews(@RequestParam(required = false) Integer filmId,
+                                   @RequestParam(defaultValue = "10") int count,
+                                   @RequestParam(required = false) Integer afterUseful,
+                                   @RequestParam(required = false) Integer afterId) {
+        return reviewStorage.getReviews(filmId, count, afterUseful, afterId);
     }
 
     @PutMapping("/{id}/like/{userId}")
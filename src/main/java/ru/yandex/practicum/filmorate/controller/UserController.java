@@ -1,32 +1,49 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.FeedEvent;
+import ru.yandex.practicum.filmorate.model.FeedPage;
+import ru.yandex.practicum.filmorate.model.Recommendation;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.FeedService;
 import ru.yandex.practicum.filmorate.service.UserService;
 import jakarta.validation.Valid;
 
-import java.util.Collection;
 import java.util.List;
 
 @RestController
 @RequestMapping("/users")
 public class UserController {
+    private static final int DEFAULT_FEED_PAGE_SIZE = 50;
+
     private final UserService userService;
     private final FeedService feedService;
+    private final ObjectMapper objectMapper;
 
-    public UserController(UserService userService, FeedService feedService) {
+    public UserController(UserService userService, FeedService feedService, ObjectMapper objectMapper) {
         this.feedService = feedService;
         this.userService = userService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping
-    public Collection<User> getAllUsers() {
-        return userService.getAllUsers();
+    public ResponseEntity<StreamingResponseBody> getAllUsers() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(JsonArrayStream.of(objectMapper, userService::streamAllUsers));
+    }
+
+    @GetMapping(params = "limit")
+    public List<User> getUsersPage(@RequestParam(defaultValue = "0") long afterId,
+                                   @RequestParam int limit) {
+        return userService.getUsersPage(afterId, limit);
     }
 
     @DeleteMapping("/{id}")
@@ -36,7 +53,10 @@ public class UserController {
     }
 
     @GetMapping("/{id}")
-    public User getUserById(@PathVariable long id) {
+    public User getUserById(@PathVariable long id, WebRequest request) {
+        if (request.checkNotModified(Long.toString(userService.getUserVersion(id)))) {
+            return null;
+        }
         return userService.getUserById(id);
     }
 
@@ -65,16 +85,19 @@ public class UserController {
 
     @GetMapping("/{id}/friends")
     public List<User> getFriends(@PathVariable long id) {
-        User user = userService.getUserById(id);
-        if (user == null) {
-            throw new NotFoundException("Пользователь с id " + id + " не найден");
-        }
         return userService.getFriends(id);
     }
 
     @GetMapping("/{id}/recommendations")
-    public List<Film> getRecommendedFilms(@PathVariable long id) {
-        return userService.getRecommendedFilms(id);
+    public List<Film> getRecommendedFilms(@PathVariable long id,
+                                          @RequestParam(defaultValue = "10") int count) {
+        return userService.getRecommendedFilms(id, count);
+    }
+
+    @GetMapping("/{id}/recommendations/scores")
+    public List<Recommendation> getRecommendations(@PathVariable long id,
+                                                   @RequestParam(defaultValue = "10") int count) {
+        return userService.getRecommendations(id, count);
     }
 
     @GetMapping("/{id}/friends/common/{otherId}")
@@ -83,7 +106,17 @@ public class UserController {
     }
 
     @GetMapping("/{id}/feed")
-    public List<FeedEvent> getUserFeed(@PathVariable long id) {
-        return feedService.getUserFeed(id);
+    public ResponseEntity<List<FeedEvent>> getUserFeed(@PathVariable long id,
+                                                       @RequestParam(required = false) String cursor,
+                                                       @RequestParam(required = false) Integer limit) {
+        if (cursor == null && limit == null) {
+            return ResponseEntity.ok(feedService.getUserFeed(id));
+        }
+        FeedPage page = feedService.getUserFeedPage(id, cursor, limit == null ? DEFAULT_FEED_PAGE_SIZE : limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header("X-Next-Cursor", page.nextCursor());
+        }
+        return response.body(page.events());
     }
 }
\ No newline at end of file
@@ -1,7 +1,10 @@
 package ru.yandex.practicum.filmorate.exceptions;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.transaction.CannotCreateTransactionException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
@@ -50,6 +53,15 @@ public class ErrorHandler {
         return new ErrorResponse(e.getMessage());
     }
 
+    // Пул соединений исчерпан или запрос не уложился в таймаут - перегрузка, а не ошибка сервера
+    @ExceptionHandler({CannotGetJdbcConnectionException.class, CannotCreateTransactionException.class,
+            QueryTimeoutException.class})
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ErrorResponse handleDatabaseUnavailable(Exception e) {
+        log.warn("База данных перегружена: {}", e.getMessage());
+        return new ErrorResponse("Сервис временно перегружен, повторите запрос позже");
+    }
+
     // Обработка всех остальных исключений
     @ExceptionHandler
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
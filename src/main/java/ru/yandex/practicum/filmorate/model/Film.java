@@ -26,7 +26,7 @@ public class Film {
     @Positive(message = "Продолжительность должна быть положительной")
     private int duration;
 
-    private Set<Long> likes = new HashSet<>();
+    private LongSet likes = new LongSet();
     private MpaRating mpa;
     private List<Genre> genres = new ArrayList<>();
     private List<Director> directors = new ArrayList<>();
@@ -0,0 +1,233 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.IOException;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+
+// Множество id без упаковки в Long: отсортированный long[], в JSON - обычный массив чисел
+@JsonSerialize(using = LongSet.Serializer.class)
+@JsonDeserialize(using = LongSet.Deserializer.class)
+public class LongSet extends AbstractSet<Long> {
+    private static final long[] EMPTY = new long[0];
+
+    private long[] values;
+    private int size;
+
+    public LongSet() {
+        values = EMPTY;
+    }
+
+    public LongSet(int capacity) {
+        values = capacity == 0 ? EMPTY : new long[capacity];
+    }
+
+    public static LongSet of(long... ids) {
+        LongSet set = new LongSet(ids.length);
+        for (long id : ids) {
+            set.add(id);
+        }
+        return set;
+    }
+
+    public static LongSet copyOf(Collection<Long> ids) {
+        if (ids instanceof LongSet longSet) {
+            LongSet copy = new LongSet();
+            copy.values = Arrays.copyOf(longSet.values, longSet.size);
+            copy.size = longSet.size;
+            return copy;
+        }
+        LongSet set = new LongSet(ids.size());
+        for (Long id : ids) {
+            set.add(id.longValue());
+        }
+        return set;
+    }
+
+    public boolean contains(long id) {
+        return indexOf(id) >= 0;
+    }
+
+    public boolean add(long id) {
+        // Строки из базы обычно приходят по возрастанию id - дописываем в конец без поиска
+        if (size == 0 || values[size - 1] < id) {
+            ensureCapacity();
+            values[size++] = id;
+            return true;
+        }
+        int index = indexOf(id);
+        if (index >= 0) {
+            return false;
+        }
+        int insertAt = -(index + 1);
+        ensureCapacity();
+        System.arraycopy(values, insertAt, values, insertAt + 1, size - insertAt);
+        values[insertAt] = id;
+        size++;
+        return true;
+    }
+
+    public boolean remove(long id) {
+        int index = indexOf(id);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    // Пересечение слиянием двух отсортированных массивов за O(n + m), результат тоже отсортирован
+    public LongSet intersect(LongSet other) {
+        LongSet common = new LongSet(Math.min(size, other.size));
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (values[i] < other.values[j]) {
+                i++;
+            } else if (values[i] > other.values[j]) {
+                j++;
+            } else {
+                common.values[common.size++] = values[i];
+                i++;
+                j++;
+            }
+        }
+        return common;
+    }
+
+    public void forEachLong(LongConsumer action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(values[i]);
+        }
+    }
+
+    public LongStream longStream() {
+        return Arrays.stream(values, 0, size);
+    }
+
+    public long[] toLongArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long id && contains(id.longValue());
+    }
+
+    @Override
+    public boolean add(Long id) {
+        return add(id.longValue());
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof Long id && remove(id.longValue());
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        return new Iterator<>() {
+            private int next;
+            private boolean canRemove;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Long next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                canRemove = true;
+                return values[next++];
+            }
+
+            @Override
+            public void remove() {
+                if (!canRemove) {
+                    throw new IllegalStateException();
+                }
+                LongSet.this.remove(values[--next]);
+                canRemove = false;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof LongSet other) {
+            return Arrays.equals(values, 0, size, other.values, 0, other.size);
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = 0; i < size; i++) {
+            hash += Long.hashCode(values[i]);
+        }
+        return hash;
+    }
+
+    private int indexOf(long id) {
+        return Arrays.binarySearch(values, 0, size, id);
+    }
+
+    private void ensureCapacity() {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(8, size + (size >> 1)));
+        }
+    }
+
+    public static class Serializer extends JsonSerializer<LongSet> {
+        @Override
+        public void serialize(LongSet set, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeArray(set.values, 0, set.size);
+        }
+    }
+
+    public static class Deserializer extends JsonDeserializer<LongSet> {
+        @Override
+        public LongSet deserialize(JsonParser parser, DeserializationContext ctxt) throws IOException {
+            if (!parser.isExpectedStartArrayToken()) {
+                return (LongSet) ctxt.handleUnexpectedToken(LongSet.class, parser);
+            }
+            LongSet set = new LongSet();
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token != JsonToken.VALUE_NULL) {
+                    set.add(parser.getValueAsLong());
+                }
+            }
+            return set;
+        }
+    }
+}
@@ -7,7 +7,7 @@ import lombok.Builder;
 import lombok.Data;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 public class Review implements Event {
     private int reviewId;
     @NotBlank(message = "Отзыв не может быть пустым")
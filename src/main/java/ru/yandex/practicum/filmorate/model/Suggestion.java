@@ -0,0 +1,4 @@
+package ru.yandex.practicum.filmorate.model;
+
+public record Suggestion(String type, long id, String name, int likes) {
+}
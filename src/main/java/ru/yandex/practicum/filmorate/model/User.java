@@ -4,9 +4,7 @@ import lombok.*;
 import jakarta.validation.constraints.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 @Data
 @Builder
@@ -30,5 +28,5 @@ public class User {
 
     private List<Friendship> friendships = new ArrayList<>();
 
-    private Set<Long> friends = new HashSet<>();
+    private LongSet friends = new LongSet();
 }
\ No newline at end of file
@@ -2,14 +2,21 @@ package ru.yandex.practicum.filmorate.service;
 
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.ValidationException;
 import ru.yandex.practicum.filmorate.model.FeedEvent;
+import ru.yandex.practicum.filmorate.model.FeedPage;
 import ru.yandex.practicum.filmorate.storage.feed.FeedStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.List;
 
 @Service
 public class FeedService {
+    private static final int MAX_PAGE_SIZE = 500;
+
     private final UserStorage userStorage;
     private final FeedStorage feedStorage;
 
@@ -20,8 +27,44 @@ public class FeedService {
     }
 
     public List<FeedEvent> getUserFeed(long userId) {
-        userStorage.getById(userId);
+        checkUserExists(userId);
         return feedStorage.getUserFeed(userId);
     }
-}
 
+    public FeedPage getUserFeedPage(long userId, String cursor, int limit) {
+        if (limit <= 0) {
+            throw new ValidationException("Параметр 'limit' должен быть положительным");
+        }
+        checkUserExists(userId);
+        int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+
+        long afterEventId = cursor == null ? 0 : decodeCursor(cursor);
+        List<FeedEvent> events = feedStorage.getUserFeedPage(userId, afterEventId, pageSize);
+        String nextCursor = null;
+        if (events.size() == pageSize) {
+            nextCursor = encodeCursor(events.getLast().getEventId());
+        }
+        return new FeedPage(events, nextCursor);
+    }
+
+    private void checkUserExists(long userId) {
+        if (!userStorage.userExists(userId)) {
+            throw new NotFoundException("Пользователь с id " + userId + " не найден");
+        }
+    }
+
+    // Курсор - позиция последнего отданного события, клиенту он непрозрачен
+    private String encodeCursor(long eventId) {
+        String position = Long.toString(eventId);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long decodeCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            return Long.parseLong(position);
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Некорректный курсор ленты: " + cursor);
+        }
+    }
+}
@@ -1,37 +1,63 @@
 package ru.yandex.practicum.filmorate.service;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exceptions.*;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Suggestion;
 import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmAutocompleteIndex;
+import ru.yandex.practicum.filmorate.storage.film.FilmSearchIndex;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.PopularityLeaderboard;
 import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
 import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserAdjacencyIndex;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
-import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Service
 public class FilmService {
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final FilmStorage filmStorage;
     private final MpaStorage mpaStorage;
     private final GenreStorage genreStorage;
     private final UserStorage userStorage;
     private final DirectorStorage directorStorage;
+    private final PopularityLeaderboard leaderboard;
+    private final PopularityMode popularityMode;
+    private final UserAdjacencyIndex adjacencyIndex;
+    private final FilmSearchIndex searchIndex;
+    private final FilmAutocompleteIndex autocompleteIndex;
 
     public FilmService(@Qualifier("FilmDbStorage") FilmStorage filmStorage,
                        @Qualifier("MpaDbStorage") MpaStorage mpaStorage,
                        @Qualifier("GenreDbStorage") GenreStorage genreStorage,
                        @Qualifier("UserDbStorage") UserStorage userStorage,
-                       @Qualifier("DirectorDbStorage") DirectorStorage directorStorage) {
+                       @Qualifier("DirectorDbStorage") DirectorStorage directorStorage,
+                       PopularityLeaderboard leaderboard,
+                       @Value("${filmorate.popular.mode:strict}") PopularityMode popularityMode,
+                       UserAdjacencyIndex adjacencyIndex,
+                       FilmSearchIndex searchIndex,
+                       FilmAutocompleteIndex autocompleteIndex) {
         this.filmStorage = filmStorage;
         this.mpaStorage = mpaStorage;
         this.genreStorage = genreStorage;
         this.userStorage = userStorage;
         this.directorStorage = directorStorage;
+        this.leaderboard = leaderboard;
+        this.popularityMode = popularityMode;
+        this.adjacencyIndex = adjacencyIndex;
+        this.searchIndex = searchIndex;
+        this.autocompleteIndex = autocompleteIndex;
     }
 
     public Film createFilm(Film film) {
@@ -43,53 +69,69 @@ public class FilmService {
             }
         }
 
-        if (film.getGenres() != null) {
-            for (Genre genre : film.getGenres()) {
-                try {
-                    genreStorage.getById(genre.getId());
-                } catch (NotFoundException e) {
-                    throw new NotFoundException("Жанр с id " + genre.getId() + " не найден");
-                }
-            }
+        if (film.getGenres() != null && !film.getGenres().isEmpty()) {
+            Set<Integer> genreIds = film.getGenres().stream()
+                    .map(Genre::getId)
+                    .collect(Collectors.toSet());
+            Set<Integer> foundIds = genreStorage.getByIds(genreIds).stream()
+                    .map(Genre::getId)
+                    .collect(Collectors.toSet());
+            genreIds.stream()
+                    .filter(id -> !foundIds.contains(id))
+                    .findFirst()
+                    .ifPresent(id -> {
+                        throw new NotFoundException("Жанр с id " + id + " не найден");
+                    });
         }
 
         return filmStorage.create(film);
     }
 
-    public Film updateFilm(Film film) {
-        return filmStorage.update(film);
+    public Film updateFilm(Film film, boolean replaceLikes) {
+        Film updated = filmStorage.update(film);
+        if (replaceLikes && film.getLikes() != null) {
+            filmStorage.replaceLikes(film.getId(), film.getLikes());
+            updated = filmStorage.getFilmById(film.getId());
+        }
+        return updated;
     }
 
     public void deleteFilm(int id) {
         filmStorage.deleteFilmById(id);
     }
 
-    public Collection<Film> getAllFilms() {
-        return filmStorage.getAllFilms();
+    public void streamAllFilms(Consumer<Film> consumer) {
+        filmStorage.streamAllFilms(consumer);
+    }
+
+    public List<Film> getFilmsPage(int afterId, int limit) {
+        if (limit <= 0) {
+            throw new ValidationException("Параметр 'limit' должен быть положительным");
+        }
+        return filmStorage.getFilmsPage(afterId, Math.min(limit, MAX_PAGE_SIZE));
     }
 
     public Film getFilmById(int id) {
         return filmStorage.getFilmById(id);
     }
 
+    public long getFilmVersion(int id) {
+        return filmStorage.getVersion(id);
+    }
+
+    // Существование фильма и пользователя проверяют внешние ключи likes
     public Film addLike(int filmId, long userId) {
-        if (filmStorage.getFilmById(filmId) == null) {
-            throw new NotFoundException("Пользователь с id " + userId + " не найден");
-        }
-        if (userStorage.getById(userId) == null) {
-            throw new NotFoundException("Пользователь с id " + userId + " не найден");
-        }
-        return filmStorage.addLike(filmId, userId);
+        return filmStorage.addLike(filmId, userId)
+                .orElseGet(() -> filmStorage.getFilmById(filmId));
     }
 
+    // Проверки нужны, только если удалять было нечего: иначе лайк подтверждает, что оба существуют
     public Film removeLike(int filmId, long userId) {
-        if (filmStorage.getFilmById(filmId) == null) {
-            throw new NotFoundException("Пользователь с id " + userId + " не найден");
-        }
-        if (userStorage.getById(userId) == null) {
-            throw new NotFoundException("Пользователь с id " + userId + " не найден");
-        }
-        return filmStorage.removeLike(filmId, userId);
+        return filmStorage.removeLike(filmId, userId)
+                .orElseGet(() -> {
+                    checkFilmAndUserExist(filmId, userId);
+                    return filmStorage.getFilmById(filmId);
+                });
     }
 
     public List<Film> getPopularFilms(int count) {
@@ -100,17 +142,24 @@ public class FilmService {
         if (genreId != null) {
             genreStorage.getById(genreId);
         }
+        if (popularityMode == PopularityMode.LEADERBOARD) {
+            return filmStorage.getFilmsByIds(leaderboard.top(count, genreId, year));
+        }
         return filmStorage.getPopularFilms(count, genreId, year);
     }
 
     public List<Film> getCommonFilms(long userId, long friendId) {
-        if (userStorage.getById(userId) == null) {
+        if (!userStorage.userExists(userId)) {
             throw new NotFoundException("Пользователь с id " + userId + " не найден");
         }
-        if (userStorage.getById(friendId) == null) {
+        if (!userStorage.userExists(friendId)) {
             throw new NotFoundException("Пользователь с id " + friendId + " не найден");
         }
-        return filmStorage.getCommonFilms(userId, friendId);
+        // Пересечение лайков считается в памяти, из базы загружаются только найденные фильмы
+        return filmStorage.getFilmsByIds(adjacencyIndex.commonFilms(userId, friendId)).stream()
+                .sorted(Comparator.comparingInt((Film film) -> film.getLikes().size()).reversed()
+                        .thenComparingInt(Film::getId))
+                .toList();
     }
 
     public List<Film> getFilmsByDirector(Long directorId, String sortConditions) {
@@ -155,6 +204,26 @@ public class FilmService {
             throw new ValidationException("Параметр 'by' должен содержать 'title' или 'director'");
         }
 
-        return filmStorage.searchFilms(query, searchByTitle, searchByDirector);
+        return filmStorage.getFilmsByIds(searchIndex.search(query, searchByTitle, searchByDirector));
+    }
+
+    public List<Suggestion> autocomplete(String query, int count) {
+        if (query == null || query.isBlank()) {
+            throw new ValidationException("Параметр 'query' не должен быть пустым");
+        }
+        if (count <= 0) {
+            throw new ValidationException("Параметр 'count' должен быть положительным");
+        }
+        return autocompleteIndex.suggest(query, Math.min(count, MAX_PAGE_SIZE));
+    }
+
+    // Проверяем только наличие строк по первичному ключу, не загружая фильм и пользователя целиком
+    private void checkFilmAndUserExist(int filmId, long userId) {
+        if (!filmStorage.filmExists(filmId)) {
+            throw new NotFoundException("Фильм с id " + filmId + " не найден");
+        }
+        if (!userStorage.userExists(userId)) {
+            throw new NotFoundException("Пользователь с id " + userId + " не найден");
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,34 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.PopularityLeaderboard;
+
+@Slf4j
+@Service
+public class LikesCountReconciler {
+    private final FilmStorage filmStorage;
+    private final PopularityLeaderboard leaderboard;
+
+    public LikesCountReconciler(@Qualifier("FilmDbStorage") FilmStorage filmStorage,
+                                PopularityLeaderboard leaderboard) {
+        this.filmStorage = filmStorage;
+        this.leaderboard = leaderboard;
+    }
+
+    // Пересчитывает films.likes_count по таблице likes и сообщает о расхождениях
+    @Scheduled(fixedDelayString = "${filmorate.likes.reconcile-delay-ms:3600000}")
+    public int reconcile() {
+        int drifted = filmStorage.reconcileLikesCount();
+        if (drifted > 0) {
+            log.warn("Счетчик лайков расходился с таблицей likes у {} фильмов, значения пересчитаны", drifted);
+            leaderboard.rebuild();
+        } else {
+            log.debug("Счетчики лайков совпадают с таблицей likes");
+        }
+        return drifted;
+    }
+}
@@ -0,0 +1,8 @@
+package ru.yandex.practicum.filmorate.service;
+
+public enum PopularityMode {
+    // Каждый запрос идет в базу, результат всегда согласован с таблицей likes
+    STRICT,
+    // Рейтинг берется из PopularityLeaderboard, обновляется после коммита
+    LEADERBOARD
+}
@@ -0,0 +1,34 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.storage.review.ReviewStorage;
+import ru.yandex.practicum.filmorate.storage.review.ReviewTopCache;
+
+@Slf4j
+@Service
+public class ReviewUsefulReconciler {
+    private final ReviewStorage reviewStorage;
+    private final ReviewTopCache topCache;
+
+    public ReviewUsefulReconciler(@Qualifier("ReviewDbStorage") ReviewStorage reviewStorage,
+                                  ReviewTopCache topCache) {
+        this.reviewStorage = reviewStorage;
+        this.topCache = topCache;
+    }
+
+    // Пересчитывает reviews.useful по таблице review_likes и сообщает о расхождениях
+    @Scheduled(fixedDelayString = "${filmorate.reviews.reconcile-delay-ms:3600000}")
+    public int reconcile() {
+        int drifted = reviewStorage.reconcileUseful();
+        if (drifted > 0) {
+            log.warn("Рейтинг полезности расходился с оценками у {} отзывов, значения пересчитаны", drifted);
+            topCache.clear();
+        } else {
+            log.debug("Рейтинги полезности совпадают с таблицей review_likes");
+        }
+        return drifted;
+    }
+}
@@ -1,27 +1,37 @@
 package ru.yandex.practicum.filmorate.service;
 
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.web.server.ResponseStatusException;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Recommendation;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.RecommendationEngine;
+import ru.yandex.practicum.filmorate.storage.user.UserAdjacencyIndex;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 @Service
 public class UserService {
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final UserStorage userStorage;
     private final FilmStorage filmStorage;
+    private final RecommendationEngine recommendationEngine;
+    private final UserAdjacencyIndex adjacencyIndex;
 
     public UserService(@Qualifier("UserDbStorage") UserStorage userStorage,
-                       @Qualifier("FilmDbStorage") FilmStorage filmStorage) {
+                       @Qualifier("FilmDbStorage") FilmStorage filmStorage,
+                       RecommendationEngine recommendationEngine,
+                       UserAdjacencyIndex adjacencyIndex) {
         this.userStorage = userStorage;
         this.filmStorage = filmStorage;
+        this.recommendationEngine = recommendationEngine;
+        this.adjacencyIndex = adjacencyIndex;
     }
 
     public User createUser(User user) {
@@ -32,7 +42,7 @@ public class UserService {
     }
 
     public User updateUser(User user) {
-        if (userStorage.getById(user.getId()) == null) {
+        if (!userStorage.userExists(user.getId())) {
             throw new NotFoundException("Пользователь с id " + user.getId() + " не найден");
         }
         return userStorage.update(user);
@@ -42,67 +52,79 @@ public class UserService {
         userStorage.delete(id);
     }
 
-    public Collection<User> getAllUsers() {
-        return userStorage.getAll();
+    public void streamAllUsers(Consumer<User> consumer) {
+        userStorage.streamAll(consumer);
+    }
+
+    public List<User> getUsersPage(long afterId, int limit) {
+        if (limit <= 0) {
+            throw new ValidationException("Параметр 'limit' должен быть положительным");
+        }
+        return userStorage.getPage(afterId, Math.min(limit, MAX_PAGE_SIZE));
     }
 
     public User getUserById(long id) {
         return userStorage.getById(id);
     }
 
-    public User addFriend(long userId, long friendId) {
-        User user = userStorage.getById(userId);
-        if (user == null) {
-            throw new NotFoundException("Пользователь с id " + userId + " не найден");
-        }
-
-        User friend = userStorage.getById(friendId);
-        if (friend == null) {
-            throw new NotFoundException("Пользователь с id " + friendId + " не найден");
-        }
+    public long getUserVersion(long id) {
+        return userStorage.getVersion(id);
+    }
 
+    public User addFriend(long userId, long friendId) {
+        checkUsersExist(userId, friendId);
         if (userId == friendId) {
             throw new ValidationException("Нельзя добавить самого себя в друзья");
         }
-        if (user.getFriends().contains(friendId)) {
+        if (userStorage.isFriends(userId, friendId)) {
             throw new ValidationException("Пользователь уже в друзьях");
         }
         return userStorage.addFriend(userId, friendId);
     }
 
     public void removeFriend(long userId, long friendId) {
-        if (userStorage.getById(userId) == null || userStorage.getById(friendId) == null) {
-            throw new NotFoundException("Пользователь с id " + userId + " не найден");
-        }
+        checkUsersExist(userId, friendId);
         userStorage.removeFriend(userId, friendId);
     }
 
     public List<User> getFriends(long userId) {
-        if (userStorage.getFriends(userId) == null) {
+        if (!userStorage.userExists(userId)) {
             throw new NotFoundException("Пользователь с id " + userId + " не найден");
         }
         return userStorage.getFriends(userId);
     }
 
     public List<User> getCommonFriends(long userId, long otherId) {
-        return userStorage.getCommonFriends(userId, otherId);
-    }
-
-    public List<Film> getRecommendedFilms(long userId) {
-        try {
-            if (!userStorage.userExists(userId)) {
-                throw new NotFoundException("Пользователь с id " + userId + " не найден");
-            }
-            List<Integer> filmIds = userStorage.getRecommendedFilms(userId);
-            return filmStorage.getFilmsByIds(filmIds);
-        } catch (NotFoundException e) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
-        } catch (Exception e) {
-            return Collections.emptyList();
+        return userStorage.getUsersByIds(adjacencyIndex.commonFriends(userId, otherId));
+    }
+
+    public List<Film> getRecommendedFilms(long userId, int count) {
+        List<Integer> filmIds = getRecommendations(userId, count).stream()
+                .map(Recommendation::filmId)
+                .toList();
+        return filmStorage.getFilmsByIds(filmIds);
+    }
+
+    public List<Recommendation> getRecommendations(long userId, int count) {
+        if (count <= 0) {
+            throw new ValidationException("Параметр 'count' должен быть положительным");
+        }
+        if (!userStorage.userExists(userId)) {
+            throw new NotFoundException("Пользователь с id " + userId + " не найден");
         }
+        return recommendationEngine.recommend(userId, Math.min(count, MAX_PAGE_SIZE));
     }
 
     public boolean isFriends(long userId, long friendId) {
         return userStorage.isFriends(userId, friendId);
     }
-}
\ No newline at end of file
+
+    private void checkUsersExist(long userId, long friendId) {
+        if (!userStorage.userExists(userId)) {
+            throw new NotFoundException("Пользователь с id " + userId + " не найден");
+        }
+        if (!userStorage.userExists(friendId)) {
+            throw new NotFoundException("Пользователь с id " + friendId + " не найден");
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.RowMapper;
 import ru.yandex.practicum.filmorate.model.*;
 
@@ -67,6 +68,16 @@ public final class RowMappers {
                 .build();
     };
 
+    public static ResultSetExtractor<LongSet> longSetExtractor(String column) {
+        return rs -> {
+            LongSet ids = new LongSet();
+            while (rs.next()) {
+                ids.add(rs.getLong(column));
+            }
+            return ids;
+        };
+    }
+
     public static Map<String, Object> toGenreMap(Genre genre) {
         Map<String, Object> m = new HashMap<>();
         m.put("genre_id", genre.getId());
@@ -1,14 +1,21 @@
 package ru.yandex.practicum.filmorate.storage.director;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.SaveDataException;
 import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.storage.event.DirectorDeletedEvent;
+import ru.yandex.practicum.filmorate.storage.event.DirectorSavedEvent;
 
 import java.sql.PreparedStatement;
 import java.sql.Statement;
@@ -20,36 +27,49 @@ import static ru.yandex.practicum.filmorate.storage.RowMappers.DIRECTOR_ROW_MAPP
 @Qualifier("DirectorDbStorage")
 public class DirectorDbStorage implements DirectorStorage {
     private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public DirectorDbStorage(JdbcTemplate jdbcTemplate) {
+    public DirectorDbStorage(JdbcTemplate jdbcTemplate, ApplicationEventPublisher eventPublisher) {
         this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
     }
 
     @Override
+    @CacheEvict(value = "directors", allEntries = true)
     public Director create(Director director) {
         String sql = "INSERT INTO directors(name)VALUES (?)";
         long id = insert(sql, director.getName());
         director.setId(id);
+        eventPublisher.publishEvent(new DirectorSavedEvent(director));
         return director;
     }
 
     @Override
+    @Caching(evict = {
+            @CacheEvict(value = "director", key = "#director.id"),
+            @CacheEvict(value = "directors", allEntries = true)
+    })
+    @Transactional
     public Director update(Director director) {
-        String sql = "UPDATE directors SET name = ? WHERE director_id = ?";
+        String sql = "UPDATE directors SET name = ?, version = version + 1 WHERE director_id = ?";
         int rowsUpdated = jdbcTemplate.update(sql, director.getName(), director.getId());
         if (rowsUpdated == 0) {
             throw new NotFoundException("Режиссёр с ID " + director.getId() + " не найден");
         }
+        bumpFilmVersions(director.getId());
+        eventPublisher.publishEvent(new DirectorSavedEvent(director));
         return director;
     }
 
     @Override
+    @Cacheable("directors")
     public Collection<Director> getAllDirectors() {
         String sql = "SELECT * FROM directors";
         return jdbcTemplate.query(sql, DIRECTOR_ROW_MAPPER);
     }
 
     @Override
+    @Cacheable(value = "director", key = "#directorId")
     public Director getDirectorById(Long directorId) {
         try {
             return jdbcTemplate.queryForObject(
@@ -63,16 +83,31 @@ public class DirectorDbStorage implements DirectorStorage {
     }
 
     @Override
+    @Caching(evict = {
+            @CacheEvict(value = "director", key = "#directorId"),
+            @CacheEvict(value = "directors", allEntries = true)
+    })
+    @Transactional
     public boolean delete(Long directorId) {
         String sql = "DELETE FROM directors WHERE director_id = ?";
         try {
+            bumpFilmVersions(directorId);
             int rowsDeleted = jdbcTemplate.update(sql, directorId);
+            if (rowsDeleted > 0) {
+                eventPublisher.publishEvent(new DirectorDeletedEvent(directorId));
+            }
             return rowsDeleted > 0;
         } catch (DataIntegrityViolationException exception) {
             return false;
         }
     }
 
+    // Имя режиссера входит в ответ с каждым его фильмом
+    private void bumpFilmVersions(long directorId) {
+        jdbcTemplate.update("UPDATE films SET version = version + 1 " +
+                "WHERE film_id IN (SELECT film_id FROM film_directors WHERE director_id = ?)", directorId);
+    }
+
     private long insert(String query, Object... params) {
         GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
         jdbcTemplate.update(connection -> {
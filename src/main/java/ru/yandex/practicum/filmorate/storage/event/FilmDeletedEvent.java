@@ -0,0 +1,4 @@
+package ru.yandex.practicum.filmorate.storage.event;
+
+public record FilmDeletedEvent(int filmId) {
+}
@@ -0,0 +1,4 @@
+package ru.yandex.practicum.filmorate.storage.event;
+
+public record LikeChangedEvent(int filmId, long userId, boolean added) {
+}
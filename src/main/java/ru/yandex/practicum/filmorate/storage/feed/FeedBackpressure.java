@@ -0,0 +1,8 @@
+package ru.yandex.practicum.filmorate.storage.feed;
+
+// Что делать с событием ленты, когда очередь записи заполнена
+public enum FeedBackpressure {
+    BLOCK,
+    DROP,
+    CALLER_RUNS
+}
@@ -1,21 +1,20 @@
 package ru.yandex.practicum.filmorate.storage.feed;
 
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.context.event.EventListener;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.model.FeedEvent;
 
 import java.util.List;
 
 import static ru.yandex.practicum.filmorate.storage.RowMappers.FEED_EVENT_ROW_MAPPER;
-import static ru.yandex.practicum.filmorate.storage.RowMappers.toFeedEventMap;
 
 @Repository
 @Qualifier("FeedDbStorage")
 public class FeedDbStorage implements FeedStorage {
+    private static final String INSERT_SQL = "INSERT INTO feed " +
+            "(user_id, entity_id, event_type, operation_type, time_stamp) VALUES (?, ?, ?, ?, ?)";
+
     private final JdbcTemplate jdbcTemplate;
 
     public FeedDbStorage(JdbcTemplate jdbcTemplate) {
@@ -25,17 +24,31 @@ public class FeedDbStorage implements FeedStorage {
     @Override
     public List<FeedEvent> getUserFeed(long userId) {
         String sql = "SELECT * FROM feed " +
-                "WHERE user_id = ? ORDER BY time_stamp";
+                "WHERE user_id = ? ORDER BY event_id";
         return jdbcTemplate.query(sql, FEED_EVENT_ROW_MAPPER, userId);
     }
 
-    @Async
-    @EventListener
-    public void onFeedEvent(FeedEvent event) {
-        SimpleJdbcInsert inserter = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("feed")
-                .usingGeneratedKeyColumns("event_id");
+    @Override
+    public List<FeedEvent> getUserFeedPage(long userId, long afterEventId, int limit) {
+        String sql = "SELECT * FROM feed " +
+                "WHERE user_id = ? AND event_id > ? ORDER BY event_id LIMIT ?";
+        return jdbcTemplate.query(sql, FEED_EVENT_ROW_MAPPER, userId, afterEventId, limit);
+    }
+
+    @Override
+    public void addEvent(FeedEvent event) {
+        jdbcTemplate.update(INSERT_SQL, event.getUserId(), event.getEntityId(),
+                event.getEventType(), event.getOperation(), event.getTimestamp());
+    }
 
-        inserter.execute(toFeedEventMap(event));
+    @Override
+    public void addEvents(List<FeedEvent> events) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, events, events.size(), (ps, event) -> {
+            ps.setLong(1, event.getUserId());
+            ps.setLong(2, event.getEntityId());
+            ps.setString(3, event.getEventType());
+            ps.setString(4, event.getOperation());
+            ps.setLong(5, event.getTimestamp());
+        });
     }
 }
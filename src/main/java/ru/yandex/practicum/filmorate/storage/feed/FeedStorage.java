@@ -8,4 +8,10 @@ public interface FeedStorage {
 
     List<FeedEvent> getUserFeed(long userId);
 
+    List<FeedEvent> getUserFeedPage(long userId, long afterEventId, int limit);
+
+    void addEvent(FeedEvent event);
+
+    void addEvents(List<FeedEvent> events);
+
 }
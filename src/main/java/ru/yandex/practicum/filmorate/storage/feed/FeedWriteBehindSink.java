@@ -0,0 +1,197 @@
+package ru.yandex.practicum.filmorate.storage.feed;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.model.FeedEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Копит события ленты в ограниченной очереди и пишет их в базу пачками из отдельного потока.
+// Нужен только в режиме write_behind: в режиме transactional строки ленты пишет FeedEventAspect
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.feed.write-mode", havingValue = "write_behind")
+public class FeedWriteBehindSink {
+    private static final long SHUTDOWN_TIMEOUT_MS = 10_000;
+    private static final long IDLE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final FeedStorage feedStorage;
+    private final BlockingQueue<FeedEvent> queue;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final FeedBackpressure backpressure;
+    private final AtomicLong pending = new AtomicLong();
+    private final Object flushMonitor = new Object();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final Timer batchTimer;
+    private final DistributionSummary batchSizes;
+    private final Counter dropped;
+    private final Counter failed;
+
+    public FeedWriteBehindSink(@Qualifier("FeedDbStorage") FeedStorage feedStorage,
+                               MeterRegistry meterRegistry,
+                               @Value("${filmorate.feed.queue-capacity:10000}") int queueCapacity,
+                               @Value("${filmorate.feed.batch-size:200}") int batchSize,
+                               @Value("${filmorate.feed.flush-interval-ms:50}") long flushIntervalMs,
+                               @Value("${filmorate.feed.backpressure:block}") FeedBackpressure backpressure,
+                               @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.feedStorage = feedStorage;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.backpressure = backpressure;
+
+        Gauge.builder("filmorate.feed.queue.size", queue, BlockingQueue::size)
+                .description("События ленты, ожидающие записи")
+                .register(meterRegistry);
+        batchTimer = Timer.builder("filmorate.feed.batch.latency")
+                .description("Время записи пачки событий ленты")
+                .register(meterRegistry);
+        batchSizes = DistributionSummary.builder("filmorate.feed.batch.size")
+                .register(meterRegistry);
+        dropped = Counter.builder("filmorate.feed.dropped")
+                .description("События ленты, отброшенные из-за переполнения очереди")
+                .register(meterRegistry);
+        failed = Counter.builder("filmorate.feed.failed")
+                .description("События ленты, которые не удалось записать")
+                .register(meterRegistry);
+
+        // Писатель почти все время ждет очередь или базу, поэтому в профиле virtual он тоже виртуальный
+        Thread.Builder builder = virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon();
+        writer = builder.name("feed-writer").start(this::drain);
+    }
+
+    // Вызов из транзакции ставит событие в очередь только после ее фиксации
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFeedEvent(FeedEvent event) {
+        if (!running) {
+            write(List.of(event));
+            return;
+        }
+        pending.incrementAndGet();
+        switch (backpressure) {
+            case BLOCK -> {
+                try {
+                    queue.put(event);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    complete(1);
+                    dropped.increment();
+                }
+            }
+            case DROP -> {
+                if (!queue.offer(event)) {
+                    complete(1);
+                    dropped.increment();
+                    log.warn("Очередь ленты переполнена, событие {} отброшено", event);
+                }
+            }
+            case CALLER_RUNS -> {
+                if (!queue.offer(event)) {
+                    write(List.of(event));
+                    complete(1);
+                }
+            }
+        }
+    }
+
+    // Ждет, пока все принятые события будут записаны
+    public void flush() {
+        long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MS;
+        synchronized (flushMonitor) {
+            while (pending.get() > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    log.warn("Не дождались записи {} событий ленты", pending.get());
+                    return;
+                }
+                try {
+                    flushMonitor.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        writer.join(SHUTDOWN_TIMEOUT_MS);
+        if (!queue.isEmpty()) {
+            List<FeedEvent> rest = new ArrayList<>();
+            queue.drainTo(rest);
+            write(rest);
+            complete(rest.size());
+        }
+    }
+
+    private void drain() {
+        List<FeedEvent> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                FeedEvent first = queue.poll(IDLE_POLL_NANOS, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // Добираем пачку до нужного размера, но не дольше интервала сброса
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize && running) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    FeedEvent next = queue.poll(Math.min(remaining, IDLE_POLL_NANOS), TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+                write(batch);
+                complete(batch.size());
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void write(List<FeedEvent> events) {
+        try {
+            batchTimer.record(() -> feedStorage.addEvents(events));
+            batchSizes.record(events.size());
+        } catch (DataAccessException e) {
+            failed.increment(events.size());
+            log.error("Не удалось записать {} событий ленты", events.size(), e);
+        }
+    }
+
+    private void complete(int count) {
+        if (pending.addAndGet(-count) == 0) {
+            synchronized (flushMonitor) {
+                flushMonitor.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package ru.yandex.practicum.filmorate.storage.feed;
+
+// Как события ленты попадают в базу: в транзакции изменения или через очередь отложенной записи
+public enum FeedWriteMode {
+    TRANSACTIONAL,
+    WRITE_BEHIND
+}
@@ -0,0 +1,166 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+
+import java.util.*;
+
+// Подсказки по началу слова в названиях фильмов и именах режиссеров из FilmCatalog: префиксное дерево,
+// обход которого ведет строку матрицы Левенштейна и отсекает ветки дальше maxEdits правок
+@Component
+public class FilmAutocompleteIndex implements FilmCatalog.Listener {
+    public static final String FILM = "FILM";
+    public static final String DIRECTOR = "DIRECTOR";
+
+    private static final Comparator<Suggestion> BY_LIKES = Comparator.comparingInt(Suggestion::likes).reversed()
+            .thenComparing(Suggestion::type, Comparator.reverseOrder())
+            .thenComparingLong(Suggestion::id);
+
+    private final FilmCatalog catalog;
+    private final int maxEdits;
+    private final int fuzzyMinLength;
+    private final Node filmTrie = new Node();
+    private final Node directorTrie = new Node();
+
+    public FilmAutocompleteIndex(FilmCatalog catalog,
+                                 @Value("${filmorate.autocomplete.max-edits:1}") int maxEdits,
+                                 @Value("${filmorate.autocomplete.fuzzy-min-length:4}") int fuzzyMinLength) {
+        this.catalog = catalog;
+        this.maxEdits = maxEdits;
+        this.fuzzyMinLength = fuzzyMinLength;
+        catalog.subscribe(this);
+    }
+
+    // Фильмы и режиссеры вперемешку по числу лайков; у режиссера это сумма лайков его фильмов
+    public List<Suggestion> suggest(String prefix, int count) {
+        String query = prefix.trim().toLowerCase();
+        int edits = query.length() >= fuzzyMinLength ? maxEdits : 0;
+        List<Suggestion> suggestions = new ArrayList<>();
+        synchronized (catalog) {
+            for (long filmId : match(filmTrie, query, edits)) {
+                int id = (int) filmId;
+                suggestions.add(new Suggestion(FILM, filmId, catalog.filmName(id), catalog.likes(id)));
+            }
+            for (long directorId : match(directorTrie, query, edits)) {
+                int likes = catalog.filmsOf(directorId).stream()
+                        .mapToInt(catalog::likes)
+                        .sum();
+                suggestions.add(new Suggestion(DIRECTOR, directorId, catalog.directorName(directorId), likes));
+            }
+        }
+        suggestions.sort(BY_LIKES);
+        return suggestions.size() > count ? List.copyOf(suggestions.subList(0, count)) : suggestions;
+    }
+
+    @Override
+    public void cleared() {
+        filmTrie.children.clear();
+        directorTrie.children.clear();
+    }
+
+    @Override
+    public void filmAdded(int filmId, String name) {
+        wordStarts(name).forEach(key -> filmTrie.insert(key, 0, filmId));
+    }
+
+    @Override
+    public void filmRemoved(int filmId, String name) {
+        wordStarts(name).forEach(key -> filmTrie.remove(key, 0, filmId));
+    }
+
+    @Override
+    public void directorAdded(long directorId, String name) {
+        wordStarts(name).forEach(key -> directorTrie.insert(key, 0, directorId));
+    }
+
+    @Override
+    public void directorRemoved(long directorId, String name) {
+        wordStarts(name).forEach(key -> directorTrie.remove(key, 0, directorId));
+    }
+
+    // Ключи - хвосты строки от начала каждого слова, чтобы "отец" находил "Крестный отец"
+    private static List<String> wordStarts(String text) {
+        String lower = text.toLowerCase();
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < lower.length(); i++) {
+            if (Character.isLetterOrDigit(lower.charAt(i)) && (i == 0 || !Character.isLetterOrDigit(lower.charAt(i - 1)))) {
+                keys.add(lower.substring(i));
+            }
+        }
+        return keys;
+    }
+
+    private static Set<Long> match(Node root, String query, int edits) {
+        Set<Long> result = new HashSet<>();
+        if (edits == 0) {
+            Node node = root.find(query);
+            if (node != null) {
+                node.collect(result);
+            }
+            return result;
+        }
+        int[] row = new int[query.length() + 1];
+        for (int j = 0; j < row.length; j++) {
+            row[j] = j;
+        }
+        root.children.forEach((c, child) -> child.matchFuzzy(c, query, row, edits, result));
+        return result;
+    }
+
+    private static class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private final Set<Long> ids = new HashSet<>();
+
+        void insert(String key, int position, long id) {
+            if (position == key.length()) {
+                ids.add(id);
+                return;
+            }
+            children.computeIfAbsent(key.charAt(position), c -> new Node()).insert(key, position + 1, id);
+        }
+
+        boolean remove(String key, int position, long id) {
+            if (position == key.length()) {
+                ids.remove(id);
+            } else {
+                Node child = children.get(key.charAt(position));
+                if (child != null && child.remove(key, position + 1, id)) {
+                    children.remove(key.charAt(position));
+                }
+            }
+            return ids.isEmpty() && children.isEmpty();
+        }
+
+        Node find(String prefix) {
+            Node node = this;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                node = node.children.get(prefix.charAt(i));
+            }
+            return node;
+        }
+
+        void collect(Set<Long> result) {
+            result.addAll(ids);
+            children.values().forEach(child -> child.collect(result));
+        }
+
+        // Строка матрицы расстояний между запросом и путем до узла: если весь запрос укладывается
+        // в maxEdits правок, подходит все поддерево, если ни одна ячейка не укладывается - ветка отсекается
+        void matchFuzzy(char c, String query, int[] previous, int edits, Set<Long> result) {
+            int[] row = new int[previous.length];
+            row[0] = previous[0] + 1;
+            int best = row[0];
+            for (int j = 1; j < row.length; j++) {
+                int substitute = previous[j - 1] + (query.charAt(j - 1) == c ? 0 : 1);
+                row[j] = Math.min(substitute, Math.min(previous[j], row[j - 1]) + 1);
+                best = Math.min(best, row[j]);
+            }
+            if (row[query.length()] <= edits) {
+                collect(result);
+            } else if (best <= edits) {
+                children.forEach((next, child) -> child.matchFuzzy(next, query, row, edits, result));
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.event.DirectorDeletedEvent;
+import ru.yandex.practicum.filmorate.storage.event.DirectorSavedEvent;
+import ru.yandex.practicum.filmorate.storage.event.FilmDeletedEvent;
+import ru.yandex.practicum.filmorate.storage.event.FilmSavedEvent;
+import ru.yandex.practicum.filmorate.storage.event.LikeChangedEvent;
+
+import java.util.*;
+
+// Названия фильмов, число лайков, режиссеры и их фильмы в памяти - общая основа поискового индекса и подсказок.
+// Подписчики перестраивают свои структуры по уведомлениям и читают каталог под его же монитором
+@Slf4j
+@Component
+public class FilmCatalog {
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Integer, FilmEntry> films = new HashMap<>();
+    private final Map<Long, String> directors = new HashMap<>();
+    private final Map<Long, Set<Integer>> filmsByDirector = new HashMap<>();
+    private final List<Listener> listeners = new ArrayList<>();
+
+    public FilmCatalog(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    synchronized void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+
+    Set<Integer> filmIds() {
+        return films.keySet();
+    }
+
+    String filmName(int filmId) {
+        return films.get(filmId).name();
+    }
+
+    int likes(int filmId) {
+        return films.get(filmId).likes();
+    }
+
+    Set<Long> directorIds() {
+        return directors.keySet();
+    }
+
+    String directorName(long directorId) {
+        return directors.get(directorId);
+    }
+
+    Set<Integer> filmsOf(long directorId) {
+        return filmsByDirector.getOrDefault(directorId, Set.of());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        films.clear();
+        directors.clear();
+        filmsByDirector.clear();
+        listeners.forEach(Listener::cleared);
+        jdbcTemplate.query("SELECT film_id, name, likes_count FROM films", rs -> {
+            putFilm(rs.getInt("film_id"), rs.getString("name"), rs.getInt("likes_count"));
+        });
+        jdbcTemplate.query("SELECT director_id, name FROM directors", rs -> {
+            putDirector(rs.getLong("director_id"), rs.getString("name"));
+        });
+        jdbcTemplate.query("SELECT film_id, director_id FROM film_directors", rs -> {
+            linkDirector(rs.getInt("film_id"), rs.getLong("director_id"));
+        });
+        log.info("Каталог фильмов построен: {} фильмов, {} режиссеров", films.size(), directors.size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onFilmSaved(FilmSavedEvent event) {
+        Film film = event.film();
+        removeFilm(film.getId());
+        putFilm(film.getId(), film.getName(), film.getLikes().size());
+        for (Director director : film.getDirectors()) {
+            if (director.getName() != null && !directors.containsKey(director.getId())) {
+                putDirector(director.getId(), director.getName());
+            }
+            linkDirector(film.getId(), director.getId());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onFilmDeleted(FilmDeletedEvent event) {
+        removeFilm(event.filmId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onLikeChanged(LikeChangedEvent event) {
+        FilmEntry entry = films.get(event.filmId());
+        if (entry != null) {
+            films.put(event.filmId(), entry.withLikes(entry.likes() + (event.added() ? 1 : -1)));
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onDirectorSaved(DirectorSavedEvent event) {
+        removeDirector(event.director().getId());
+        putDirector(event.director().getId(), event.director().getName());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onDirectorDeleted(DirectorDeletedEvent event) {
+        removeDirector(event.directorId());
+        Set<Integer> filmIds = filmsByDirector.remove(event.directorId());
+        if (filmIds != null) {
+            filmIds.forEach(filmId -> films.get(filmId).directorIds().remove(event.directorId()));
+        }
+    }
+
+    private void putFilm(int filmId, String name, int likes) {
+        films.put(filmId, new FilmEntry(name, likes, new HashSet<>()));
+        listeners.forEach(listener -> listener.filmAdded(filmId, name));
+    }
+
+    private void removeFilm(int filmId) {
+        FilmEntry entry = films.remove(filmId);
+        if (entry != null) {
+            listeners.forEach(listener -> listener.filmRemoved(filmId, entry.name()));
+            entry.directorIds().forEach(directorId -> filmsByDirector.get(directorId).remove(filmId));
+        }
+    }
+
+    private void linkDirector(int filmId, long directorId) {
+        FilmEntry entry = films.get(filmId);
+        if (entry != null) {
+            entry.directorIds().add(directorId);
+            filmsByDirector.computeIfAbsent(directorId, id -> new HashSet<>()).add(filmId);
+        }
+    }
+
+    private void putDirector(long directorId, String name) {
+        directors.put(directorId, name);
+        listeners.forEach(listener -> listener.directorAdded(directorId, name));
+    }
+
+    private void removeDirector(long directorId) {
+        String name = directors.remove(directorId);
+        if (name != null) {
+            listeners.forEach(listener -> listener.directorRemoved(directorId, name));
+        }
+    }
+
+    // Вызывается под монитором каталога
+    interface Listener {
+        void cleared();
+
+        void filmAdded(int filmId, String name);
+
+        void filmRemoved(int filmId, String name);
+
+        void directorAdded(long directorId, String name);
+
+        void directorRemoved(long directorId, String name);
+    }
+
+    private record FilmEntry(String name, int likes, Set<Long> directorIds) {
+        FilmEntry withLikes(int likes) {
+            return new FilmEntry(name, likes, directorIds);
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Repository;
@@ -10,10 +13,14 @@ import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LongSet;
+import ru.yandex.practicum.filmorate.storage.event.FilmDeletedEvent;
+import ru.yandex.practicum.filmorate.storage.event.FilmSavedEvent;
+import ru.yandex.practicum.filmorate.storage.event.LikeChangedEvent;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.sql.PreparedStatement;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static ru.yandex.practicum.filmorate.storage.RowMappers.*;
@@ -21,27 +28,57 @@ import static ru.yandex.practicum.filmorate.storage.RowMappers.*;
 @Repository
 @Qualifier("FilmDbStorage")
 public class FilmDbStorage implements FilmStorage {
+    private static final int STREAM_CHUNK_SIZE = 500;
+    private static final String POPULAR_SELECT = "SELECT f.*, mr.name AS mpa_name " +
+            "FROM films f " +
+            "JOIN mpa_rating mr ON f.rating_id = mr.rating_id ";
+    private static final String POPULAR_ORDER = "ORDER BY f.likes_count DESC, f.film_id LIMIT ?";
+    private static final String POPULAR_SQL = POPULAR_SELECT + POPULAR_ORDER;
+    private static final String POPULAR_BY_YEAR_SQL = POPULAR_SELECT +
+            "WHERE f.release_year = ? " + POPULAR_ORDER;
+    // Фильтры по жанру читают сводку genre_popularity: одна строка на фильм в жанре, порядок берется из индекса
+    private static final String POPULAR_BY_GENRE_SELECT = "SELECT f.*, mr.name AS mpa_name " +
+            "FROM genre_popularity gp " +
+            "JOIN films f ON f.film_id = gp.film_id " +
+            "JOIN mpa_rating mr ON f.rating_id = mr.rating_id ";
+    private static final String POPULAR_BY_GENRE_ORDER = "ORDER BY gp.likes_count DESC, gp.film_id LIMIT ?";
+    private static final String POPULAR_BY_GENRE_SQL = POPULAR_BY_GENRE_SELECT +
+            "WHERE gp.genre_id = ? " + POPULAR_BY_GENRE_ORDER;
+    private static final String POPULAR_BY_GENRE_AND_YEAR_SQL = POPULAR_BY_GENRE_SELECT +
+            "WHERE gp.genre_id = ? AND gp.release_year = ? " + POPULAR_BY_GENRE_ORDER;
+
     private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public FilmDbStorage(JdbcTemplate jdbcTemplate) {
+    public FilmDbStorage(JdbcTemplate jdbcTemplate, ApplicationEventPublisher eventPublisher) {
         this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
     }
 
     @Override
+    @Transactional
     public Film create(Film film) {
         SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
                 .withTableName("films")
+                .usingColumns("name", "description", "release_date", "duration", "rating_id")
                 .usingGeneratedKeyColumns("film_id");
 
         int filmId = simpleJdbcInsert.executeAndReturnKey(filmToMap(film)).intValue();
-        updateFilmGenres(filmId, film.getGenres());
-        updateFilmDirectors(filmId, film.getDirectors());
-        return getFilmById(filmId);
+        insertFilmLinks("film_genres", "genre_id", filmId, genreIds(film.getGenres()));
+        insertFilmLinks("film_directors", "director_id", filmId, directorIds(film.getDirectors()));
+        if (!genreIds(film.getGenres()).isEmpty()) {
+            syncGenrePopularity(filmId);
+        }
+        Film created = getFilmById(filmId);
+        eventPublisher.publishEvent(new FilmSavedEvent(created));
+        return created;
     }
 
     @Override
+    @Transactional
     public Film update(Film film) {
-        String sql = "UPDATE films SET name = ?, description = ?, release_date = ?, duration = ?, rating_id = ? WHERE film_id = ?";
+        String sql = "UPDATE films SET name = ?, description = ?, release_date = ?, duration = ?, rating_id = ?, " +
+                "version = version + 1 WHERE film_id = ?";
         jdbcTemplate.update(sql,
                 film.getName(),
                 film.getDescription(),
@@ -50,58 +87,120 @@ public class FilmDbStorage implements FilmStorage {
                 film.getMpa().getId(),
                 film.getId());
 
-        updateFilmGenres(film.getId(), film.getGenres());
-        updateFilmLikes(film.getId(), film.getLikes());
-        updateFilmDirectors(film.getId(), film.getDirectors());
-        return getFilmById(film.getId());
+        // Лайки меняются только через replaceLikes, чтобы правка описания не переписывала все лайки фильма
+        syncFilmLinks("film_genres", "genre_id", film.getId(), genreIds(film.getGenres()));
+        syncFilmLinks("film_directors", "director_id", film.getId(), directorIds(film.getDirectors()));
+        syncGenrePopularity(film.getId());
+        Film updated = getFilmById(film.getId());
+        eventPublisher.publishEvent(new FilmSavedEvent(updated));
+        return updated;
     }
 
     @Override
     public Collection<Film> getAllFilms() {
         String sql = "SELECT f.*, mr.name AS mpa_name FROM films f JOIN mpa_rating mr ON f.rating_id = mr.rating_id";
-        return jdbcTemplate.query(sql, this::mapRowToFilm);
+        return hydrate(jdbcTemplate.query(sql, FILM_ROW_MAPPER));
+    }
+
+    // Курсор и догрузка пачек идут в одной транзакции на одном соединении, иначе каждый поток
+    // держит два соединения из пула и при нагрузке обрывается посреди ответа
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAllFilms(Consumer<Film> consumer) {
+        String sql = "SELECT f.*, mr.name AS mpa_name FROM films f JOIN mpa_rating mr ON f.rating_id = mr.rating_id " +
+                "ORDER BY f.film_id";
+        List<Film> chunk = new ArrayList<>(STREAM_CHUNK_SIZE);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ps.setFetchSize(STREAM_CHUNK_SIZE);
+            return ps;
+        }, rs -> {
+            chunk.add(FILM_ROW_MAPPER.mapRow(rs, rs.getRow()));
+            if (chunk.size() == STREAM_CHUNK_SIZE) {
+                hydrate(chunk).forEach(consumer);
+                chunk.clear();
+            }
+        });
+        hydrate(chunk).forEach(consumer);
+    }
+
+    @Override
+    public List<Film> getFilmsPage(int afterId, int limit) {
+        String sql = "SELECT f.*, mr.name AS mpa_name FROM films f JOIN mpa_rating mr ON f.rating_id = mr.rating_id " +
+                "WHERE f.film_id > ? ORDER BY f.film_id LIMIT ?";
+        return hydrate(jdbcTemplate.query(sql, FILM_ROW_MAPPER, afterId, limit));
     }
 
     @Override
     public Film getFilmById(int id) {
         String sql = "SELECT f.*, mr.name AS mpa_name FROM films f JOIN mpa_rating mr ON f.rating_id = mr.rating_id WHERE f.film_id = ?";
-        return jdbcTemplate.query(sql, this::mapRowToFilm, id)
+        return hydrate(jdbcTemplate.query(sql, FILM_ROW_MAPPER, id))
                 .stream()
                 .findFirst()
                 .orElseThrow(() -> new NotFoundException("Фильм с id " + id + " не найден"));
     }
 
+    @Override
+    public long getVersion(int id) {
+        List<Long> versions = jdbcTemplate.queryForList("SELECT version FROM films WHERE film_id = ?", Long.class, id);
+        if (versions.isEmpty()) {
+            throw new NotFoundException("Фильм с id " + id + " не найден");
+        }
+        return versions.getFirst();
+    }
+
+    @Override
+    public boolean filmExists(int id) {
+        String sql = "SELECT EXISTS (SELECT 1 FROM films WHERE film_id = ?)";
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, Boolean.class, id));
+    }
+
     @Override
     @Transactional
     public boolean deleteFilmById(int id) {
         Film film = getFilmById(id);
         jdbcTemplate.update("DELETE FROM film_genres WHERE film_id = ?", id);
         jdbcTemplate.update("DELETE FROM likes WHERE film_id = ?", id);
-        return jdbcTemplate.update("DELETE FROM films WHERE film_id = ?", id) > 0;
+        boolean deleted = jdbcTemplate.update("DELETE FROM films WHERE film_id = ?", id) > 0;
+        if (deleted) {
+            eventPublisher.publishEvent(new FilmDeletedEvent(id));
+        }
+        return deleted;
     }
 
     @Override
+    @Transactional
     @EventListen(eventType = "LIKE", operation = "ADD", userIdArgIndex = 1, entityIdArgIndex = 0)
-    public Film addLike(int filmId, long userId) {
-        boolean likeExists = jdbcTemplate.queryForObject(
-                "SELECT COUNT(*) FROM likes WHERE film_id = ? AND user_id = ?",
-                Integer.class,
-                filmId,
-                userId
-        ) > 0;
-
-        if (!likeExists) {
-            jdbcTemplate.update("INSERT INTO likes (film_id, user_id) VALUES (?, ?)", filmId, userId);
+    public Optional<Film> addLike(int filmId, long userId) {
+        // Один INSERT без предварительных проверок: повторный лайк пропускается, гонку одинаковых запросов
+        // ловит первичный ключ, а несуществующие фильм или пользователь - внешние ключи likes
+        String sql = "INSERT INTO likes (film_id, user_id) SELECT ?, ? " +
+                "WHERE NOT EXISTS (SELECT 1 FROM likes WHERE film_id = ? AND user_id = ?)";
+        boolean inserted;
+        try {
+            inserted = jdbcTemplate.update(sql, filmId, userId, filmId, userId) > 0;
+        } catch (DuplicateKeyException e) {
+            inserted = false;
+        } catch (DataIntegrityViolationException e) {
+            throw new NotFoundException("Фильм с id " + filmId + " или пользователь с id " + userId + " не найден");
+        }
+        if (!inserted) {
+            return Optional.empty();
         }
-        return getFilmById(filmId);
+        eventPublisher.publishEvent(new LikeChangedEvent(filmId, userId, true));
+        return Optional.of(countLike(filmId, 1));
     }
 
     @Override
+    @Transactional
     @EventListen(eventType = "LIKE", operation = "REMOVE", userIdArgIndex = 1, entityIdArgIndex = 0)
-    public Film removeLike(int filmId, long userId) {
+    public Optional<Film> removeLike(int filmId, long userId) {
         String sql = "DELETE FROM likes WHERE film_id = ? AND user_id = ?";
-        jdbcTemplate.update(sql, filmId, userId);
-        return getFilmById(filmId);
+        if (jdbcTemplate.update(sql, filmId, userId) == 0) {
+            return Optional.empty();
+        }
+        eventPublisher.publishEvent(new LikeChangedEvent(filmId, userId, false));
+        return Optional.of(countLike(filmId, -1));
     }
 
     @Override
@@ -111,40 +210,18 @@ public class FilmDbStorage implements FilmStorage {
 
     @Override
     public List<Film> getPopularFilms(int count, Integer genreId, Integer year) {
-        String sql = "SELECT f.*, mr.name AS mpa_name, COUNT(l.user_id) AS likes_count " +
-                "FROM films f " +
-                "JOIN mpa_rating mr ON f.rating_id = mr.rating_id " +
-                "LEFT JOIN likes l ON f.film_id = l.film_id " +
-                "LEFT JOIN film_genres fg ON f.film_id = fg.film_id " +
-                "WHERE 1=1 ";
-
-        if (genreId != null) {
-            sql += "AND fg.genre_id = " + genreId + " ";
-        }
-
-        if (year != null) {
-            sql += "AND EXTRACT(YEAR FROM CAST(f.release_date AS DATE)) = " + year + " ";
+        // Четыре неизменных текста запроса вместо склейки фильтров: H2 разбирает и планирует каждый один раз
+        List<Film> films;
+        if (genreId != null && year != null) {
+            films = jdbcTemplate.query(POPULAR_BY_GENRE_AND_YEAR_SQL, FILM_ROW_MAPPER, genreId, year, count);
+        } else if (genreId != null) {
+            films = jdbcTemplate.query(POPULAR_BY_GENRE_SQL, FILM_ROW_MAPPER, genreId, count);
+        } else if (year != null) {
+            films = jdbcTemplate.query(POPULAR_BY_YEAR_SQL, FILM_ROW_MAPPER, year, count);
+        } else {
+            films = jdbcTemplate.query(POPULAR_SQL, FILM_ROW_MAPPER, count);
         }
-
-        sql += "GROUP BY f.film_id " +
-                "ORDER BY likes_count DESC " +
-                "LIMIT ?";
-
-        return jdbcTemplate.query(sql, this::mapRowToFilm, count);
-    }
-
-    @Override
-    public List<Film> getCommonFilms(long userId, long friendId) {
-        String sql = "SELECT f.*, mr.name AS mpa_name " +
-                "FROM films f " +
-                "JOIN mpa_rating mr ON f.rating_id = mr.rating_id " +
-                "JOIN likes l1 ON f.film_id = l1.film_id AND l1.user_id = ? " +
-                "JOIN likes l2 ON f.film_id = l2.film_id AND l2.user_id = ? " +
-                "LEFT JOIN likes l ON f.film_id = l.film_id " +
-                "GROUP BY f.film_id " +
-                "ORDER BY COUNT(l.user_id) DESC";
-
-        return jdbcTemplate.query(sql, this::mapRowToFilm, userId, friendId);
+        return hydrate(films);
     }
 
     @Override
@@ -152,13 +229,12 @@ public class FilmDbStorage implements FilmStorage {
         if (ids.isEmpty()) {
             return Collections.emptyList();
         }
-        String placeholders = ids.stream().map(i -> "?").collect(Collectors.joining(","));
         String sql = "SELECT f.*, mr.name AS mpa_name " +
                 "FROM films f " +
                 "JOIN mpa_rating mr ON f.rating_id = mr.rating_id " +
-                "WHERE f.film_id IN (" + placeholders + ")";
-        Object[] args = ids.toArray();
-        List<Film> films = jdbcTemplate.query(sql, this::mapRowToFilm, args);
+                "WHERE f.film_id = ANY(?)";
+        Object[] args = {ids.toArray(new Integer[0])};
+        List<Film> films = hydrate(jdbcTemplate.query(sql, FILM_ROW_MAPPER, args));
         Map<Integer, Film> byId = films.stream()
                 .collect(Collectors.toMap(Film::getId, f -> f));
         return ids.stream()
@@ -167,143 +243,151 @@ public class FilmDbStorage implements FilmStorage {
                 .collect(Collectors.toList());
     }
 
-    @Override
-    public List<Film> getRecommendedFilms(long userId) {
-
-        String similarUsersQuery = "SELECT l2.user_id, COUNT(l2.film_id) AS common_likes " +
-                "FROM likes l1 " +
-                "JOIN likes l2 ON l1.film_id = l2.film_id AND l1.user_id != l2.user_id " +
-                "WHERE l1.user_id = ? " +
-                "GROUP BY l2.user_id " +
-                "ORDER BY common_likes DESC " +
-                "LIMIT 1";
-
-        Long similarUserId = jdbcTemplate.queryForObject(similarUsersQuery,
-                (rs, rowNum) -> rs.getLong("user_id"),
-                userId);
-
-        if (similarUserId == null) {
-            return Collections.emptyList();
-        }
-
-        String recommendedFilmsQuery = "SELECT f.*, mr.name AS mpa_name " +
-                "FROM films f " +
-                "JOIN mpa_rating mr ON f.rating_id = mr.rating_id " +
-                "JOIN likes l ON f.film_id = l.film_id " +
-                "WHERE l.user_id = ? " +
-                "AND f.film_id NOT IN (" +
-                "   SELECT film_id FROM likes WHERE user_id = ?" +
-                ")";
-
-        return jdbcTemplate.query(recommendedFilmsQuery,
-                this::mapRowToFilm,
-                similarUserId,
-                userId);
-    }
-
     private Map<String, Object> filmToMap(Film film) {
         return toFilmMap(film);
     }
 
-    private Film mapRowToFilm(ResultSet rs, int rowNum) throws SQLException {
-        Film film = FILM_ROW_MAPPER.mapRow(rs, rowNum);
-
-        int filmId = film.getId();
-
-        film.setLikes(getLikesForFilm(filmId));
-        film.setGenres(getOrderedGenresForFilm(filmId));
-        film.setDirectors(getDirectorForFilm(filmId));
+    // Догружает лайки, жанры и режиссеров для всего списка фильмов тремя запросами
+    private List<Film> hydrate(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+        Map<Integer, Film> filmsById = new HashMap<>();
+        for (Film film : films) {
+            film.setLikes(new LongSet());
+            film.setGenres(new ArrayList<>());
+            film.setDirectors(new ArrayList<>());
+            filmsById.put(film.getId(), film);
+        }
+        Object[] ids = {filmsById.keySet().toArray(new Integer[0])};
 
-        return film;
-    }
+        String likesSql = "SELECT film_id, user_id FROM likes WHERE film_id = ANY(?) ORDER BY film_id, user_id";
+        jdbcTemplate.query(likesSql, rs -> {
+            filmsById.get(rs.getInt("film_id")).getLikes().add(rs.getLong("user_id"));
+        }, ids);
 
-    private List<Genre> getOrderedGenresForFilm(int filmId) {
-        String sql = "SELECT g.genre_id, g.name " +
+        String genresSql = "SELECT fg.film_id, g.genre_id, g.name " +
                 "FROM film_genres fg " +
                 "JOIN genres g ON fg.genre_id = g.genre_id " +
-                "WHERE fg.film_id = ? " +
+                "WHERE fg.film_id = ANY(?) " +
                 "ORDER BY g.genre_id";
+        jdbcTemplate.query(genresSql, rs -> {
+            filmsById.get(rs.getInt("film_id")).getGenres().add(GENRE_ROW_MAPPER.mapRow(rs, 0));
+        }, ids);
 
-        return jdbcTemplate.query(sql, (rs, rowNum) ->
-                        new Genre(rs.getInt("genre_id"), rs.getString("name")),
-                filmId);
-    }
-
-    private Set<Long> getLikesForFilm(int filmId) {
-        String sql = "SELECT user_id FROM likes WHERE film_id = ?";
-        return new HashSet<>(jdbcTemplate.queryForList(sql, Long.class, filmId));
-    }
-
-    private List<Director> getDirectorForFilm(int filmId) {
-        String sql = "SELECT d.director_id, d.name " +
+        String directorsSql = "SELECT fd.film_id, d.director_id, d.name " +
                 "FROM film_directors fd " +
                 "JOIN directors d ON fd.director_id = d.director_id " +
-                "WHERE fd.film_id = ? ";
-        return jdbcTemplate.query(sql, (rs, rowNum) ->
-                        new Director(rs.getLong("director_id"), rs.getString("name")),
-                filmId);
-    }
+                "WHERE fd.film_id = ANY(?)";
+        jdbcTemplate.query(directorsSql, rs -> {
+            filmsById.get(rs.getInt("film_id")).getDirectors().add(DIRECTOR_ROW_MAPPER.mapRow(rs, 0));
+        }, ids);
 
-    private Set<Genre> getGenresForFilm(int filmId) {
-        String sql = "SELECT g.genre_id, g.name" +
-                " FROM film_genres fg JOIN genres g ON fg.genre_id = g.genre_id WHERE fg.film_id = ? ORDER BY g.genre_id";
-        return new HashSet<>(jdbcTemplate.query(sql, (rs, rowNum) ->
-                new Genre(rs.getInt("genre_id"), rs.getString("name")), filmId));
+        return films;
     }
 
-    private void updateFilmGenres(int filmId, List<Genre> genres) {
-        jdbcTemplate.update("DELETE FROM film_genres WHERE film_id = ?", filmId);
-
-        if (genres != null && !genres.isEmpty()) {
-
-            Set<Integer> uniqueGenreIds = genres.stream()
-                    .map(Genre::getId)
-                    .collect(Collectors.toSet());
-
-            List<Object[]> batchArgs = uniqueGenreIds.stream()
-                    .map(genreId -> new Object[]{filmId, genreId})
-                    .collect(Collectors.toList());
-
-            jdbcTemplate.batchUpdate(
-                    "INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?)",
-                    batchArgs
-            );
+    // Счетчик обновляется тем же запросом, что читает строку фильма для ответа.
+    // Сводку по жанрам трогаем, только если у фильма есть жанры
+    private Film countLike(int filmId, int delta) {
+        String sql = "SELECT f.*, mr.name AS mpa_name FROM FINAL TABLE (" +
+                "UPDATE films SET likes_count = likes_count + ?, version = version + 1 WHERE film_id = ?) f " +
+                "JOIN mpa_rating mr ON f.rating_id = mr.rating_id";
+        Film film = hydrate(jdbcTemplate.query(sql, FILM_ROW_MAPPER, delta, filmId)).getFirst();
+        if (!film.getGenres().isEmpty()) {
+            jdbcTemplate.update("UPDATE genre_popularity SET likes_count = likes_count + ? WHERE film_id = ?",
+                    delta, filmId);
         }
+        return film;
     }
 
+    // Счетчик лайков хранится в films и копируется в строки сводки по жанрам.
+    // Список лайков входит в ответ с фильмом, поэтому версия растет вместе со счетчиком
+    private void addToLikesCount(int filmId, int delta) {
+        jdbcTemplate.update("UPDATE films SET likes_count = likes_count + ?, version = version + 1 WHERE film_id = ?",
+                delta, filmId);
+        jdbcTemplate.update("UPDATE genre_popularity SET likes_count = likes_count + ? WHERE film_id = ?",
+                delta, filmId);
+    }
 
-    private void updateFilmLikes(int filmId, Set<Long> likes) {
-        jdbcTemplate.update("DELETE FROM likes WHERE film_id = ?", filmId);
+    private void syncGenrePopularity(int filmId) {
+        jdbcTemplate.update("DELETE FROM genre_popularity WHERE film_id = ?", filmId);
+        jdbcTemplate.update("INSERT INTO genre_popularity (genre_id, film_id, release_year, likes_count) " +
+                "SELECT fg.genre_id, f.film_id, f.release_year, f.likes_count " +
+                "FROM film_genres fg " +
+                "JOIN films f ON f.film_id = fg.film_id " +
+                "WHERE fg.film_id = ?", filmId);
+    }
 
-        if (likes != null && !likes.isEmpty()) {
+    private void insertFilmLinks(String table, String column, int filmId, Set<Long> ids) {
+        batchLinks("INSERT INTO " + table + " (film_id, " + column + ") VALUES (?, ?)", filmId, ids);
+    }
 
-            List<Object[]> batchArgs = likes.stream()
-                    .map(userId -> new Object[]{filmId, userId})
-                    .collect(Collectors.toList());
+    // Приводит связи фильма к нужному набору, трогая только добавленные и удаленные строки
+    private void syncFilmLinks(String table, String column, int filmId, Set<Long> wanted) {
+        Set<Long> current = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT " + column + " FROM " + table + " WHERE film_id = ?", Long.class, filmId));
+        List<Long> removed = current.stream().filter(id -> !wanted.contains(id)).toList();
+        List<Long> added = wanted.stream().filter(id -> !current.contains(id)).toList();
+        batchLinks("DELETE FROM " + table + " WHERE film_id = ? AND " + column + " = ?", filmId, removed);
+        batchLinks("INSERT INTO " + table + " (film_id, " + column + ") VALUES (?, ?)", filmId, added);
+    }
 
-            jdbcTemplate.batchUpdate(
-                    "INSERT INTO likes (film_id, user_id) VALUES (?, ?)",
-                    batchArgs
-            );
+    private void batchLinks(String sql, int filmId, Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
         }
+        List<Object[]> batchArgs = ids.stream()
+                .map(id -> new Object[]{filmId, id})
+                .collect(Collectors.toList());
+        jdbcTemplate.batchUpdate(sql, batchArgs);
     }
 
-    private void updateFilmDirectors(int filmId, List<Director> directors) {
-        jdbcTemplate.update("DELETE FROM film_directors WHERE film_id = ? ", filmId);
-
-        if (directors != null && !directors.isEmpty()) {
-            List<Long> directorsIdList = directors.stream()
-                    .map(Director::getId)
-                    .toList();
+    private static Set<Long> genreIds(List<Genre> genres) {
+        if (genres == null) {
+            return Collections.emptySet();
+        }
+        return genres.stream()
+                .map(genre -> (long) genre.getId())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
 
-            List<Object[]> batchArgs = directorsIdList.stream()
-                    .map(directorsId -> new Object[]{filmId, directorsId})
-                    .collect(Collectors.toList());
+    private static Set<Long> directorIds(List<Director> directors) {
+        if (directors == null) {
+            return Collections.emptySet();
+        }
+        return directors.stream()
+                .map(Director::getId)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
 
-            jdbcTemplate.batchUpdate(
-                    "INSERT INTO film_directors (film_id, director_id) VALUES (?, ?)",
-                    batchArgs);
+    @Override
+    @Transactional
+    public void replaceLikes(int filmId, LongSet likes) {
+        LongSet current = jdbcTemplate.query("SELECT user_id FROM likes WHERE film_id = ? ORDER BY user_id",
+                longSetExtractor("user_id"), filmId);
+        List<Long> removed = current.stream().filter(userId -> !likes.contains(userId.longValue())).toList();
+        List<Long> added = likes.stream().filter(userId -> !current.contains(userId.longValue())).toList();
+        if (removed.isEmpty() && added.isEmpty()) {
+            return;
         }
+        batchLinks("DELETE FROM likes WHERE film_id = ? AND user_id = ?", filmId, removed);
+        batchLinks("INSERT INTO likes (film_id, user_id) VALUES (?, ?)", filmId, added);
+        addToLikesCount(filmId, added.size() - removed.size());
+        removed.forEach(userId -> eventPublisher.publishEvent(new LikeChangedEvent(filmId, userId, false)));
+        added.forEach(userId -> eventPublisher.publishEvent(new LikeChangedEvent(filmId, userId, true)));
+    }
+
+    @Override
+    @Transactional
+    public int reconcileLikesCount() {
+        String sql = "UPDATE films f " +
+                "SET likes_count = (SELECT COUNT(*) FROM likes l WHERE l.film_id = f.film_id), version = version + 1 " +
+                "WHERE likes_count <> (SELECT COUNT(*) FROM likes l WHERE l.film_id = f.film_id)";
+        int drifted = jdbcTemplate.update(sql);
+        jdbcTemplate.update("UPDATE genre_popularity gp " +
+                "SET likes_count = (SELECT f.likes_count FROM films f WHERE f.film_id = gp.film_id) " +
+                "WHERE likes_count <> (SELECT f.likes_count FROM films f WHERE f.film_id = gp.film_id)");
+        return drifted;
     }
 
     @Override
@@ -314,63 +398,17 @@ public class FilmDbStorage implements FilmStorage {
                 "JOIN film_directors fd ON f.film_id = fd.film_id " +
                 "WHERE fd.director_id = ? " +
                 "ORDER BY EXTRACT(YEAR FROM f.release_date)";
-        return jdbcTemplate.query(sql, this::mapRowToFilm, directorId);
+        return hydrate(jdbcTemplate.query(sql, FILM_ROW_MAPPER, directorId));
     }
 
     @Override
     public List<Film> getDirectorFilmsOrderLikes(Long directorId) {
-        String sql = "SELECT f.*, mr.name AS mpa_name, COUNT(l.user_id) AS likes_count " +
+        String sql = "SELECT f.*, mr.name AS mpa_name " +
                 "FROM films f " +
                 "JOIN mpa_rating mr ON f.rating_id = mr.rating_id " +
                 "JOIN film_directors fd ON f.film_id = fd.film_id " +
-                "LEFT JOIN likes l ON f.film_id = l.film_id " +
                 "WHERE fd.director_id = ? " +
-                "GROUP BY f.film_id, mr.name " +
-                "ORDER BY likes_count DESC";
-        return jdbcTemplate.query(sql, this::mapRowToFilm, directorId);
-    }
-
-    @Override
-    public List<Film> searchFilms(String query, boolean byTitle, boolean byDirector) {
-        String lowerQuery = "%" + query.toLowerCase() + "%";
-        List<Object> params = new ArrayList<>();
-        StringBuilder sql = new StringBuilder(
-                "SELECT f.*, mr.name AS mpa_name, COUNT(l.user_id) AS popularity " +
-                        "FROM films f " +
-                        "JOIN mpa_rating mr ON f.rating_id = mr.rating_id " +
-                        "LEFT JOIN likes l ON f.film_id = l.film_id "
-        );
-
-        if (byDirector) {
-            sql.append(
-                    "LEFT JOIN film_directors fd ON f.film_id = fd.film_id " +
-                            "LEFT JOIN directors d ON fd.director_id = d.director_id "
-            );
-        }
-
-        sql.append("WHERE ");
-
-        if (byTitle && byDirector) {
-            sql.append("(LOWER(f.name) LIKE ? OR LOWER(d.name) LIKE ?) ");
-            params.add(lowerQuery);
-            params.add(lowerQuery);
-        } else if (byTitle) {
-            sql.append("LOWER(f.name) LIKE ? ");
-            params.add(lowerQuery);
-        } else if (byDirector) {
-            sql.append("LOWER(d.name) LIKE ? ");
-            params.add(lowerQuery);
-        } else {
-            sql.append("LOWER(f.name) LIKE ? ");
-            params.add(lowerQuery);
-        }
-
-        sql.append(
-                "GROUP BY f.film_id, f.name, f.description, f.release_date, f.duration, f.rating_id, mr.name " +
-                        "ORDER BY popularity DESC"
-        );
-
-        String finalSql = sql.toString();
-        return jdbcTemplate.query(finalSql, this::mapRowToFilm, params.toArray());
+                "ORDER BY f.likes_count DESC, f.film_id";
+        return hydrate(jdbcTemplate.query(sql, FILM_ROW_MAPPER, directorId));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,105 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+// Инвертированный индекс триграмм по названиям фильмов и именам режиссеров из FilmCatalog.
+// Триграммы запроса сужают кандидатов, вхождение подстроки проверяется по самой строке, как в LIKE '%q%'
+@Component
+public class FilmSearchIndex implements FilmCatalog.Listener {
+    private static final int GRAM = 3;
+
+    private final FilmCatalog catalog;
+    private final Map<String, Set<Integer>> titleGrams = new HashMap<>();
+    private final Map<String, Set<Long>> directorGrams = new HashMap<>();
+
+    public FilmSearchIndex(FilmCatalog catalog) {
+        this.catalog = catalog;
+        catalog.subscribe(this);
+    }
+
+    // Найденные фильмы упорядочены по убыванию лайков, при равенстве - по id
+    public List<Integer> search(String query, boolean byTitle, boolean byDirector) {
+        String needle = query.toLowerCase();
+        synchronized (catalog) {
+            Set<Integer> found = new HashSet<>();
+            if (byTitle) {
+                candidates(titleGrams, catalog.filmIds(), needle).stream()
+                        .filter(filmId -> catalog.filmName(filmId).toLowerCase().contains(needle))
+                        .forEach(found::add);
+            }
+            if (byDirector) {
+                candidates(directorGrams, catalog.directorIds(), needle).stream()
+                        .filter(directorId -> catalog.directorName(directorId).toLowerCase().contains(needle))
+                        .forEach(directorId -> found.addAll(catalog.filmsOf(directorId)));
+            }
+            return found.stream()
+                    .sorted(Comparator.comparingInt(catalog::likes).reversed()
+                            .thenComparing(Comparator.naturalOrder()))
+                    .toList();
+        }
+    }
+
+    @Override
+    public void cleared() {
+        titleGrams.clear();
+        directorGrams.clear();
+    }
+
+    @Override
+    public void filmAdded(int filmId, String name) {
+        grams(name.toLowerCase()).forEach(gram -> titleGrams.computeIfAbsent(gram, g -> new HashSet<>()).add(filmId));
+    }
+
+    @Override
+    public void filmRemoved(int filmId, String name) {
+        grams(name.toLowerCase()).forEach(gram -> removePosting(titleGrams, gram, filmId));
+    }
+
+    @Override
+    public void directorAdded(long directorId, String name) {
+        grams(name.toLowerCase()).forEach(gram -> directorGrams.computeIfAbsent(gram, g -> new HashSet<>()).add(directorId));
+    }
+
+    @Override
+    public void directorRemoved(long directorId, String name) {
+        grams(name.toLowerCase()).forEach(gram -> removePosting(directorGrams, gram, directorId));
+    }
+
+    // Пересечение списков триграмм запроса, начиная с самого короткого; запрос короче триграммы - полный перебор
+    private static <T> Collection<T> candidates(Map<String, Set<T>> postings, Set<T> all, String needle) {
+        if (needle.length() < GRAM) {
+            return new ArrayList<>(all);
+        }
+        List<Set<T>> lists = new ArrayList<>();
+        for (String gram : grams(needle)) {
+            Set<T> posting = postings.get(gram);
+            if (posting == null) {
+                return Collections.emptyList();
+            }
+            lists.add(posting);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+        Set<T> result = new HashSet<>(lists.getFirst());
+        for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+            result.retainAll(lists.get(i));
+        }
+        return result;
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    private static <T> void removePosting(Map<String, Set<T>> postings, String gram, T id) {
+        Set<T> ids = postings.get(gram);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            postings.remove(gram);
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.LongSet;
 import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
 
@@ -10,29 +13,37 @@ public interface FilmStorage {
 
     Film update(Film film);
 
+    void replaceLikes(int filmId, LongSet likes);
+
     Collection<Film> getAllFilms();
 
+    void streamAllFilms(Consumer<Film> consumer);
+
+    List<Film> getFilmsPage(int afterId, int limit);
+
     Film getFilmById(int id);
 
+    // Версия фильма для ETag: одно чтение по ключу без загрузки связей
+    long getVersion(int id);
+
+    boolean filmExists(int id);
+
     boolean deleteFilmById(int id);
 
-    Film addLike(int filmId, long userId);
+    // Фильм после изменения; пустой результат - состояние не поменялось (лайк уже стоял или его не было)
+    Optional<Film> addLike(int filmId, long userId);
 
-    Film removeLike(int filmId, long userId);
+    Optional<Film> removeLike(int filmId, long userId);
 
     List<Film> getPopularFilms(int count);
 
-    List<Film> getRecommendedFilms(long userId);
-
     List<Film> getDirectorFilmsOrderYear(Long directorId);
 
     List<Film> getDirectorFilmsOrderLikes(Long directorId);
 
-    List<Film> searchFilms(String query, boolean byTitle, boolean byDirector);
-
     List<Film> getPopularFilms(int count, Integer genreId, Integer year);
 
-    List<Film> getCommonFilms(long userId, long friendId);
-
     List<Film> getFilmsByIds(List<Integer> ids);
+
+    int reconcileLikesCount();
 }
\ No newline at end of file
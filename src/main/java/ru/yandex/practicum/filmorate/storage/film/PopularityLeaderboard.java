@@ -0,0 +1,196 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LongSet;
+import ru.yandex.practicum.filmorate.storage.event.FilmDeletedEvent;
+import ru.yandex.practicum.filmorate.storage.event.FilmSavedEvent;
+import ru.yandex.practicum.filmorate.storage.event.LikeChangedEvent;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Collectors;
+
+// Рейтинг популярности фильмов в памяти, разбитый по корзинам (жанр, год)
+@Slf4j
+@Component
+public class PopularityLeaderboard {
+    private static final Comparator<Rank> BY_POPULARITY = Comparator.comparingInt(Rank::likes).reversed()
+            .thenComparingInt(Rank::filmId);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Integer, FilmEntry> films = new HashMap<>();
+    // События, пришедшие во время перестройки: накатываются на прочитанный снимок перед подменой
+    private List<Object> pendingEvents;
+    private volatile Map<Bucket, NavigableSet<Rank>> buckets = new ConcurrentHashMap<>();
+
+    public PopularityLeaderboard(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public List<Integer> top(int count, Integer genreId, Integer year) {
+        NavigableSet<Rank> ranking = buckets.get(new Bucket(genreId, year));
+        if (ranking == null) {
+            return Collections.emptyList();
+        }
+        return ranking.stream()
+                .limit(count)
+                .map(Rank::filmId)
+                .toList();
+    }
+
+    // Лайки хранятся множествами пользователей, а не счетчиками: событие о лайке, который уже попал
+    // в прочитанный снимок, накатывается повторно без двойного счета
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        synchronized (this) {
+            if (pendingEvents != null) {
+                return;
+            }
+            pendingEvents = new ArrayList<>();
+        }
+        try {
+            Map<Integer, FilmEntry> loaded = new HashMap<>();
+            jdbcTemplate.query("SELECT film_id, release_year FROM films", rs -> {
+                loaded.put(rs.getInt("film_id"),
+                        new FilmEntry(new LongSet(), rs.getInt("release_year"), new HashSet<>()));
+            });
+            jdbcTemplate.query("SELECT film_id, user_id FROM likes", rs -> {
+                FilmEntry entry = loaded.get(rs.getInt("film_id"));
+                if (entry != null) {
+                    entry.likedBy().add(rs.getLong("user_id"));
+                }
+            });
+            jdbcTemplate.query("SELECT film_id, genre_id FROM film_genres", rs -> {
+                FilmEntry entry = loaded.get(rs.getInt("film_id"));
+                if (entry != null) {
+                    entry.genreIds().add(rs.getInt("genre_id"));
+                }
+            });
+
+            synchronized (this) {
+                for (Object event : pendingEvents) {
+                    if (event instanceof LikeChangedEvent likeChanged) {
+                        FilmEntry entry = loaded.get(likeChanged.filmId());
+                        if (entry != null) {
+                            entry.apply(likeChanged);
+                        }
+                    } else if (event instanceof FilmSavedEvent filmSaved) {
+                        loaded.put(filmSaved.film().getId(), FilmEntry.of(filmSaved.film()));
+                    } else if (event instanceof FilmDeletedEvent filmDeleted) {
+                        loaded.remove(filmDeleted.filmId());
+                    }
+                }
+
+                Map<Bucket, NavigableSet<Rank>> rebuilt = new ConcurrentHashMap<>();
+                loaded.forEach((filmId, entry) -> entry.buckets()
+                        .forEach(bucket -> rankingOf(rebuilt, bucket).add(new Rank(filmId, entry.likes()))));
+                films.clear();
+                films.putAll(loaded);
+                buckets = rebuilt;
+                log.info("Рейтинг популярности построен: {} фильмов, {} корзин", loaded.size(), rebuilt.size());
+            }
+        } finally {
+            synchronized (this) {
+                pendingEvents = null;
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onLikeChanged(LikeChangedEvent event) {
+        FilmEntry entry = films.get(event.filmId());
+        if (entry != null) {
+            int likes = entry.likes();
+            if (entry.apply(event)) {
+                move(event.filmId(), entry, likes, entry.likes());
+            }
+        }
+        queue(event);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onFilmSaved(FilmSavedEvent event) {
+        replace(event.film().getId(), FilmEntry.of(event.film()));
+        queue(event);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onFilmDeleted(FilmDeletedEvent event) {
+        replace(event.filmId(), null);
+        queue(event);
+    }
+
+    private void queue(Object event) {
+        if (pendingEvents != null) {
+            pendingEvents.add(event);
+        }
+    }
+
+    private void move(int filmId, FilmEntry entry, int from, int to) {
+        Rank previous = new Rank(filmId, from);
+        Rank current = new Rank(filmId, to);
+        entry.buckets().forEach(bucket -> {
+            NavigableSet<Rank> ranking = rankingOf(buckets, bucket);
+            ranking.remove(previous);
+            ranking.add(current);
+        });
+    }
+
+    private void replace(int filmId, FilmEntry entry) {
+        FilmEntry previous = entry == null ? films.remove(filmId) : films.put(filmId, entry);
+        if (previous != null) {
+            Rank rank = new Rank(filmId, previous.likes());
+            previous.buckets().forEach(bucket -> rankingOf(buckets, bucket).remove(rank));
+        }
+        if (entry != null) {
+            Rank rank = new Rank(filmId, entry.likes());
+            entry.buckets().forEach(bucket -> rankingOf(buckets, bucket).add(rank));
+        }
+    }
+
+    private static NavigableSet<Rank> rankingOf(Map<Bucket, NavigableSet<Rank>> buckets, Bucket bucket) {
+        return buckets.computeIfAbsent(bucket, b -> new ConcurrentSkipListSet<>(BY_POPULARITY));
+    }
+
+    private record Bucket(Integer genreId, Integer year) {
+    }
+
+    private record Rank(int filmId, int likes) {
+    }
+
+    private record FilmEntry(LongSet likedBy, int year, Set<Integer> genreIds) {
+        static FilmEntry of(Film film) {
+            Set<Integer> genreIds = film.getGenres().stream()
+                    .map(Genre::getId)
+                    .collect(Collectors.toSet());
+            return new FilmEntry(LongSet.copyOf(film.getLikes()), film.getReleaseDate().getYear(), genreIds);
+        }
+
+        int likes() {
+            return likedBy.size();
+        }
+
+        boolean apply(LikeChangedEvent event) {
+            return event.added() ? likedBy.add(event.userId()) : likedBy.remove(event.userId());
+        }
+
+        List<Bucket> buckets() {
+            List<Bucket> result = new ArrayList<>();
+            result.add(new Bucket(null, null));
+            result.add(new Bucket(null, year));
+            for (Integer genreId : genreIds) {
+                result.add(new Bucket(genreId, null));
+                result.add(new Bucket(genreId, year));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.model.LongSet;
+import ru.yandex.practicum.filmorate.model.Recommendation;
+import ru.yandex.practicum.filmorate.storage.event.FilmDeletedEvent;
+import ru.yandex.practicum.filmorate.storage.event.LikeChangedEvent;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Рекомендации по схожести фильмов: разреженная матрица лайков пользователь x фильм в памяти
+// и для каждого фильма не более maxNeighbours самых похожих на него по коэффициенту Жаккара
+@Slf4j
+@Component
+public class RecommendationEngine {
+    private static final Comparator<Recommendation> BY_SCORE = Comparator.comparingDouble(Recommendation::score)
+            .reversed()
+            .thenComparingInt(Recommendation::filmId);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxNeighbours;
+    private final int refreshBatch;
+    private final ForkJoinPool pool;
+    private final Set<Integer> dirtyFilms = ConcurrentHashMap.newKeySet();
+    private LikeMatrix matrix = new LikeMatrix();
+    // События, пришедшие во время перестройки: накатываются на новую матрицу перед подменой
+    private List<Object> pendingEvents;
+    private volatile Map<Integer, Neighbours> neighbours = new ConcurrentHashMap<>();
+
+    public RecommendationEngine(JdbcTemplate jdbcTemplate,
+                                @Value("${filmorate.recommendations.neighbours:50}") int maxNeighbours,
+                                @Value("${filmorate.recommendations.parallelism:0}") int parallelism,
+                                @Value("${filmorate.recommendations.refresh-batch:500}") int refreshBatch) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxNeighbours = maxNeighbours;
+        this.refreshBatch = refreshBatch;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    // Оценка фильма - сумма его схожести с фильмами, которые пользователь уже лайкнул.
+    // Запрос читает последних опубликованных соседей и ничего не пересчитывает сам
+    public List<Recommendation> recommend(long userId, int count) {
+        long[] liked;
+        synchronized (this) {
+            LongSet films = matrix.filmsByUser.get(userId);
+            if (films == null) {
+                return Collections.emptyList();
+            }
+            liked = films.toLongArray();
+        }
+
+        Map<Integer, Double> scores = new HashMap<>();
+        for (long filmId : liked) {
+            Neighbours similar = neighbours.get((int) filmId);
+            if (similar == null) {
+                continue;
+            }
+            for (int i = 0; i < similar.filmIds().length; i++) {
+                if (Arrays.binarySearch(liked, similar.filmIds()[i]) < 0) {
+                    scores.merge(similar.filmIds()[i], similar.scores()[i], Double::sum);
+                }
+            }
+        }
+        return scores.entrySet().stream()
+                .map(e -> new Recommendation(e.getKey(), e.getValue()))
+                .sorted(BY_SCORE)
+                .limit(count)
+                .toList();
+    }
+
+    // Полная перестройка идет вне блокировки: лайки и запросы обслуживаются старым индексом,
+    // пока фильмы считаются параллельно в пуле, затем готовый индекс подменяется целиком
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${filmorate.recommendations.rebuild-delay-ms:3600000}",
+            initialDelayString = "${filmorate.recommendations.rebuild-delay-ms:3600000}")
+    public void rebuild() {
+        synchronized (this) {
+            if (pendingEvents != null) {
+                return;
+            }
+            pendingEvents = new ArrayList<>();
+        }
+        try {
+            long started = System.nanoTime();
+            LikeMatrix loaded = new LikeMatrix();
+            jdbcTemplate.query("SELECT user_id, film_id FROM likes", rs -> {
+                loaded.link(rs.getLong("user_id"), rs.getInt("film_id"));
+            });
+            Map<Integer, Neighbours> rebuilt = computeAll(loaded);
+
+            synchronized (this) {
+                for (Object event : pendingEvents) {
+                    if (event instanceof LikeChangedEvent likeChanged) {
+                        apply(loaded, likeChanged);
+                    } else if (event instanceof FilmDeletedEvent filmDeleted) {
+                        apply(loaded, filmDeleted);
+                    }
+                }
+                matrix = loaded;
+                neighbours = rebuilt;
+            }
+            log.info("Индекс рекомендаций построен за {} мс на {} потоках: {} пользователей, {} фильмов",
+                    (System.nanoTime() - started) / 1_000_000, pool.getParallelism(),
+                    loaded.filmsByUser.size(), loaded.usersByFilm.size());
+        } finally {
+            synchronized (this) {
+                pendingEvents = null;
+            }
+        }
+    }
+
+    // Пересчитывает соседей только у фильмов, затронутых лайками с прошлого прохода, не больше refreshBatch
+    // за проход; остальные ждут следующего. Блокировка берется на каждый фильм, чтобы не задерживать лайки.
+    // Знаменатель Жаккара у остальных соседей меняется незначительно и выравнивается полной перестройкой
+    @Scheduled(fixedDelayString = "${filmorate.recommendations.refresh-delay-ms:1000}")
+    public void refresh() {
+        Iterator<Integer> iterator = dirtyFilms.iterator();
+        for (int i = 0; i < refreshBatch && iterator.hasNext(); i++) {
+            int filmId = iterator.next();
+            iterator.remove();
+            synchronized (this) {
+                if (matrix.usersByFilm.containsKey(filmId)) {
+                    neighbours.put(filmId, computeNeighbours(filmId));
+                } else {
+                    neighbours.remove(filmId);
+                }
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onLikeChanged(LikeChangedEvent event) {
+        apply(matrix, event);
+        if (pendingEvents != null) {
+            pendingEvents.add(event);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onFilmDeleted(FilmDeletedEvent event) {
+        apply(matrix, event);
+        if (pendingEvents != null) {
+            pendingEvents.add(event);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private void apply(LikeMatrix target, LikeChangedEvent event) {
+        if (event.added()) {
+            target.link(event.userId(), event.filmId());
+        } else {
+            target.unlink(event.userId(), event.filmId());
+        }
+        dirtyFilms.add(event.filmId());
+        LongSet films = target.filmsByUser.get(event.userId());
+        if (films != null) {
+            films.forEachLong(filmId -> dirtyFilms.add((int) filmId));
+        }
+    }
+
+    private void apply(LikeMatrix target, FilmDeletedEvent event) {
+        LongSet users = target.usersByFilm.get(event.filmId());
+        if (users != null) {
+            for (long userId : users.toLongArray()) {
+                target.unlink(userId, event.filmId());
+                target.filmsByUser.getOrDefault(userId, new LongSet())
+                        .forEachLong(filmId -> dirtyFilms.add((int) filmId));
+            }
+        }
+        dirtyFilms.add(event.filmId());
+    }
+
+    private Neighbours computeNeighbours(int filmId) {
+        LongSet users = matrix.usersByFilm.get(filmId);
+        Map<Integer, Integer> coLikes = new HashMap<>();
+        users.forEachLong(userId -> matrix.filmsByUser.get(userId)
+                .forEachLong(otherId -> coLikes.merge((int) otherId, 1, Integer::sum)));
+        coLikes.remove(filmId);
+
+        List<Recommendation> ranked = new ArrayList<>(coLikes.size());
+        coLikes.forEach((otherId, common) -> {
+            int union = users.size() + matrix.usersByFilm.get(otherId).size() - common;
+            ranked.add(new Recommendation(otherId, (double) common / union));
+        });
+        ranked.sort(BY_SCORE);
+        return toNeighbours(ranked);
+    }
+
+    // Матрица переводится в плотные индексы и массивы int[], фильмы делятся между потоками пула
+    private Map<Integer, Neighbours> computeAll(LikeMatrix source) {
+        int[] filmIds = source.usersByFilm.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        long[] userIds = source.filmsByUser.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        int[][] filmUsers = new int[filmIds.length][];
+        int[][] userFilms = new int[userIds.length][];
+        for (int f = 0; f < filmIds.length; f++) {
+            filmUsers[f] = source.usersByFilm.get(filmIds[f]).longStream()
+                    .mapToInt(userId -> Arrays.binarySearch(userIds, userId))
+                    .toArray();
+        }
+        for (int u = 0; u < userIds.length; u++) {
+            userFilms[u] = source.filmsByUser.get(userIds[u]).longStream()
+                    .mapToInt(filmId -> Arrays.binarySearch(filmIds, (int) filmId))
+                    .toArray();
+        }
+
+        Neighbours[] result = new Neighbours[filmIds.length];
+        int chunk = Math.max(1, filmIds.length / (pool.getParallelism() * 4));
+        pool.invoke(new NeighboursTask(filmIds, filmUsers, userFilms, result, 0, filmIds.length, chunk));
+
+        Map<Integer, Neighbours> rebuilt = new ConcurrentHashMap<>(filmIds.length * 2);
+        for (int f = 0; f < filmIds.length; f++) {
+            rebuilt.put(filmIds[f], result[f]);
+        }
+        return rebuilt;
+    }
+
+    private Neighbours toNeighbours(List<Recommendation> ranked) {
+        int size = Math.min(ranked.size(), maxNeighbours);
+        int[] filmIds = new int[size];
+        double[] scores = new double[size];
+        for (int i = 0; i < size; i++) {
+            filmIds[i] = ranked.get(i).filmId();
+            scores[i] = ranked.get(i).score();
+        }
+        return new Neighbours(filmIds, scores);
+    }
+
+    private class NeighboursTask extends RecursiveAction {
+        private final int[] filmIds;
+        private final int[][] filmUsers;
+        private final int[][] userFilms;
+        private final Neighbours[] result;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        NeighboursTask(int[] filmIds, int[][] filmUsers, int[][] userFilms, Neighbours[] result,
+                       int from, int to, int chunk) {
+            this.filmIds = filmIds;
+            this.filmUsers = filmUsers;
+            this.userFilms = userFilms;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > chunk) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new NeighboursTask(filmIds, filmUsers, userFilms, result, from, middle, chunk),
+                        new NeighboursTask(filmIds, filmUsers, userFilms, result, middle, to, chunk));
+                return;
+            }
+            // Счетчики совместных лайков и битовая маска затронутых фильмов переиспользуются внутри куска
+            int[] coLikes = new int[filmIds.length];
+            BitSet touched = new BitSet(filmIds.length);
+            PriorityQueue<Recommendation> top = new PriorityQueue<>(BY_SCORE.reversed());
+            for (int f = from; f < to; f++) {
+                for (int u : filmUsers[f]) {
+                    for (int g : userFilms[u]) {
+                        coLikes[g]++;
+                        touched.set(g);
+                    }
+                }
+                touched.clear(f);
+                for (int g = touched.nextSetBit(0); g >= 0; g = touched.nextSetBit(g + 1)) {
+                    int union = filmUsers[f].length + filmUsers[g].length - coLikes[g];
+                    top.add(new Recommendation(filmIds[g], (double) coLikes[g] / union));
+                    if (top.size() > maxNeighbours) {
+                        top.poll();
+                    }
+                    coLikes[g] = 0;
+                }
+                coLikes[f] = 0;
+                touched.clear();
+
+                List<Recommendation> ranked = new ArrayList<>(top);
+                ranked.sort(BY_SCORE);
+                result[f] = toNeighbours(ranked);
+                top.clear();
+            }
+        }
+    }
+
+    private static class LikeMatrix {
+        private final Map<Long, LongSet> filmsByUser = new HashMap<>();
+        private final Map<Integer, LongSet> usersByFilm = new HashMap<>();
+
+        void link(long userId, int filmId) {
+            filmsByUser.computeIfAbsent(userId, id -> new LongSet()).add(filmId);
+            usersByFilm.computeIfAbsent(filmId, id -> new LongSet()).add(userId);
+        }
+
+        void unlink(long userId, int filmId) {
+            removeFrom(filmsByUser, userId, filmId);
+            removeFrom(usersByFilm, filmId, userId);
+        }
+
+        private static <K> void removeFrom(Map<K, LongSet> index, K key, long value) {
+            LongSet values = index.get(key);
+            if (values != null && values.remove(value) && values.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private record Neighbours(int[] filmIds, double[] scores) {
+    }
+}
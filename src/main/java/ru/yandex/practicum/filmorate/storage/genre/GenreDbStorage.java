@@ -1,12 +1,14 @@
 package ru.yandex.practicum.filmorate.storage.genre;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Genre;
 
 import java.util.Collection;
+import java.util.List;
 
 import static ru.yandex.practicum.filmorate.storage.RowMappers.GENRE_ROW_MAPPER;
 
@@ -20,12 +22,14 @@ public class GenreDbStorage implements GenreStorage {
     }
 
     @Override
+    @Cacheable("genres")
     public Collection<Genre> getAll() {
         String sql = "SELECT * FROM genres ORDER BY genre_id";
         return jdbcTemplate.query(sql, GENRE_ROW_MAPPER);
     }
 
     @Override
+    @Cacheable(value = "genre", key = "#id")
     public Genre getById(int id) {
         String sql = "SELECT * FROM genres WHERE genre_id = ?";
         return jdbcTemplate.query(sql, GENRE_ROW_MAPPER, id)
@@ -34,13 +38,15 @@ public class GenreDbStorage implements GenreStorage {
                 .orElseThrow(() -> new NotFoundException("Жанр с id " + id + " не найден"));
     }
 
+    // Набор жанров фильма обычно повторяется, поэтому кешируем его целиком
     @Override
-    public boolean delete(int id) {
-        String sql = "DELETE FROM genres WHERE genre_id = ?";
-        int rowsAffected = jdbcTemplate.update(sql, id);
-        if (rowsAffected == 0) {
-            throw new NotFoundException("Жанр с id " + id + " не найден");
+    @Cacheable(value = "genreSets", key = "T(java.util.Set).copyOf(#ids)")
+    public List<Genre> getByIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
         }
-        return true;
+        String sql = "SELECT * FROM genres WHERE genre_id = ANY(?) ORDER BY genre_id";
+        Object[] params = {ids.toArray(new Integer[0])};
+        return jdbcTemplate.query(sql, GENRE_ROW_MAPPER, params);
     }
 }
\ No newline at end of file
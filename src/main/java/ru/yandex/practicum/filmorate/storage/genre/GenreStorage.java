@@ -2,6 +2,7 @@ package ru.yandex.practicum.filmorate.storage.genre;
 
 import ru.yandex.practicum.filmorate.model.Genre;
 import java.util.Collection;
+import java.util.List;
 
 public interface GenreStorage {
 
@@ -9,6 +10,6 @@ public interface GenreStorage {
 
     Genre getById(int id);
 
-    boolean delete(int id);
+    List<Genre> getByIds(Collection<Integer> ids);
 
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.storage.mpa;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
@@ -20,12 +21,14 @@ public class MpaDbStorage implements MpaStorage {
     }
 
     @Override
+    @Cacheable("mpaRatings")
     public Collection<MpaRating> getAllRatings() {
         String sql = "SELECT * FROM mpa_rating ORDER BY rating_id";
         return jdbcTemplate.query(sql, MPA_ROW_MAPPER);
     }
 
     @Override
+    @Cacheable(value = "mpa", key = "#id")
     public MpaRating getMpaById(Integer id) {
         String sql = "SELECT * FROM mpa_rating WHERE rating_id = ?";
         return jdbcTemplate.query(sql, MPA_ROW_MAPPER, id)
@@ -33,14 +36,4 @@ public class MpaDbStorage implements MpaStorage {
                 .findFirst()
                 .orElseThrow(() -> new NotFoundException("Рейтинг MPA с id " + id + " не найден"));
     }
-
-    @Override
-    public boolean delete(Integer id) {
-        String sql = "DELETE FROM mpa_rating WHERE rating_id = ?";
-        int rowsAffected = jdbcTemplate.update(sql, id);
-        if (rowsAffected == 0) {
-            throw new NotFoundException("Рейтинг MPA с id " + id + " не найден");
-        }
-        return true;
-    }
 }
\ No newline at end of file
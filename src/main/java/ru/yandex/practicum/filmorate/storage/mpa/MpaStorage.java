@@ -9,6 +9,4 @@ public interface MpaStorage {
 
     MpaRating getMpaById(Integer id);
 
-    boolean delete(Integer id);
-
 }
\ No newline at end of file
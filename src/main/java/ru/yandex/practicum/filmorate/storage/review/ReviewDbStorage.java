@@ -1,17 +1,22 @@
 package ru.yandex.practicum.filmorate.storage.review;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.annotations.EventListen;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.ValidationException;
 import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.storage.event.ReviewChangedEvent;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import static ru.yandex.practicum.filmorate.storage.RowMappers.REVIEW_ROW_MAPPER;
@@ -20,10 +25,18 @@ import static ru.yandex.practicum.filmorate.storage.RowMappers.toReviewMap;
 @Repository
 @Qualifier("ReviewDbStorage")
 public class ReviewDbStorage implements ReviewStorage {
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ReviewTopCache topCache;
 
-    public ReviewDbStorage(JdbcTemplate jdbcTemplate) {
+    public ReviewDbStorage(JdbcTemplate jdbcTemplate,
+                           ApplicationEventPublisher eventPublisher,
+                           ReviewTopCache topCache) {
         this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+        this.topCache = topCache;
     }
 
     @Override
@@ -39,8 +52,10 @@ public class ReviewDbStorage implements ReviewStorage {
         }
         SimpleJdbcInsert insert = new SimpleJdbcInsert(jdbcTemplate)
                 .withTableName("reviews")
+                .usingColumns("user_id", "film_id", "useful", "is_positive", "content")
                 .usingGeneratedKeyColumns("review_id");
         int id = insert.executeAndReturnKey(reviewToMap(review)).intValue();
+        eventPublisher.publishEvent(new ReviewChangedEvent(review.getFilmId()));
         return getReviewById(id);
     }
 
@@ -49,7 +64,8 @@ public class ReviewDbStorage implements ReviewStorage {
     public Review updateReview(Review review) {
         String sql = "UPDATE reviews SET " +
                 "is_positive = ?, " +
-                "content = ? " +
+                "content = ?, " +
+                "version = version + 1 " +
                 "WHERE review_id = ?";
 
         jdbcTemplate.update(sql,
@@ -58,17 +74,19 @@ public class ReviewDbStorage implements ReviewStorage {
                 review.getReviewId()
         );
 
-        return getReviewById(review.getReviewId());
+        Review updated = getReviewById(review.getReviewId());
+        eventPublisher.publishEvent(new ReviewChangedEvent(updated.getFilmId()));
+        return updated;
     }
 
     @Override
     @EventListen(eventType = "REVIEW", operation = "REMOVE", entityIdArgIndex = 0)
     public boolean deleteReviewById(int id) {
-        String sql = "DELETE FROM reviews WHERE review_id = ?";
-
-        int rowsAffected = jdbcTemplate.update(sql, id);
+        String sql = "SELECT film_id FROM OLD TABLE (DELETE FROM reviews WHERE review_id = ?)";
 
-        return rowsAffected > 0;
+        List<Integer> filmIds = jdbcTemplate.queryForList(sql, Integer.class, id);
+        filmIds.forEach(filmId -> eventPublisher.publishEvent(new ReviewChangedEvent(filmId)));
+        return !filmIds.isEmpty();
     }
 
     @Override
@@ -81,53 +99,77 @@ public class ReviewDbStorage implements ReviewStorage {
         }
     }
 
+    // Страницы по (useful DESC, review_id): следующая начинается после последнего отзыва предыдущей.
+    // Первая страница без курсора отдается из кэша лучших отзывов
     @Override
-    public Collection<Review> getReviewsByFilmId(int filmId, int count) {
-        if (filmId == -1) {
-            return getAllReviews();
+    public List<Review> getReviews(Integer filmId, int count, Integer afterUseful, Integer afterId) {
+        if (count <= 0) {
+            throw new ValidationException("Параметр 'count' должен быть положительным");
         }
-        String sql = "SELECT * FROM reviews WHERE film_id = ? ORDER BY useful DESC LIMIT ?";
-        return jdbcTemplate.query(sql, this::mapRowToReview, filmId, count);
-    }
-
-    @Override
-    public Collection<Review> getAllReviews() {
-        String sql = "SELECT * FROM reviews ORDER BY useful DESC";
-        return jdbcTemplate.query(sql, this::mapRowToReview);
+        if ((afterUseful == null) != (afterId == null)) {
+            throw new ValidationException("Параметры 'afterUseful' и 'afterId' задаются вместе");
+        }
+        int limit = Math.min(count, MAX_PAGE_SIZE);
+        if (afterId == null && limit <= topCache.size()) {
+            return topCache.top(filmId, limit, () -> loadPage(filmId, topCache.size(), null, null));
+        }
+        return loadPage(filmId, limit, afterUseful, afterId);
     }
 
     @Override
+    @Transactional
     public Review addLike(int reviewId, int userId) {
-        String deleteDisLikeSql = "DELETE FROM review_likes WHERE review_id = ? AND user_id = ? AND is_positive = false";
-        if (jdbcTemplate.update(deleteDisLikeSql, reviewId, userId) > 0) {
-            addEstimation(reviewId, userId, true, 2);
-        } else {
-            addEstimation(reviewId, userId, true, 1);
-        }
-        return getReviewById(reviewId);
+        return vote(reviewId, userId, true);
     }
 
     @Override
+    @Transactional
     public Review removeLike(int reviewId, int userId) {
-        deleteEstimation(reviewId, userId, true, -1);
-        return getReviewById(reviewId);
+        return unvote(reviewId, userId, true);
     }
 
     @Override
+    @Transactional
     public Review addDislike(int reviewId, int userId) {
-        String deleteLikeSql = "DELETE FROM review_likes WHERE review_id = ? AND user_id = ? AND is_positive = true";
-        if (jdbcTemplate.update(deleteLikeSql, reviewId, userId) > 0) {
-            addEstimation(reviewId, userId, false, -2);
-        } else {
-            addEstimation(reviewId, userId, false, -1);
-        }
-        return getReviewById(reviewId);
+        return vote(reviewId, userId, false);
     }
 
     @Override
+    @Transactional
     public Review removeDislike(int reviewId, int userId) {
-        deleteEstimation(reviewId, userId, false, 1);
-        return getReviewById(reviewId);
+        return unvote(reviewId, userId, false);
+    }
+
+    @Override
+    @Transactional
+    public int reconcileUseful() {
+        String score = "(SELECT COALESCE(SUM(CASE WHEN rl.is_positive THEN 1 ELSE -1 END), 0) " +
+                "FROM review_likes rl WHERE rl.review_id = r.review_id)";
+        return jdbcTemplate.update("UPDATE reviews r SET useful = " + score + ", version = version + 1" +
+                " WHERE useful IS DISTINCT FROM " + score);
+    }
+
+    // Оптимизатор H2 сам выбирает индекс внешнего ключа по film_id и сортирует все отзывы фильма,
+    // поэтому составной индекс указан явно, а film_id добавлен в начало ORDER BY под порядок индекса
+    private List<Review> loadPage(Integer filmId, int limit, Integer afterUseful, Integer afterId) {
+        StringBuilder sql = new StringBuilder();
+        List<Object> args = new ArrayList<>();
+        if (filmId != null) {
+            sql.append("SELECT * FROM reviews USE INDEX (idx_reviews_film_useful) WHERE film_id = ?");
+            args.add(filmId);
+        } else {
+            sql.append("SELECT * FROM reviews WHERE TRUE");
+        }
+        if (afterId != null) {
+            sql.append(" AND (useful < ? OR useful = ? AND review_id > ?)");
+            args.add(afterUseful);
+            args.add(afterUseful);
+            args.add(afterId);
+        }
+        sql.append(filmId != null ? " ORDER BY film_id, useful DESC, review_id" : " ORDER BY useful DESC, review_id");
+        sql.append(" LIMIT ?");
+        args.add(limit);
+        return jdbcTemplate.query(sql.toString(), this::mapRowToReview, args.toArray());
     }
 
     private Review mapRowToReview(ResultSet rs, int rowNum) throws SQLException {
@@ -138,21 +180,44 @@ public class ReviewDbStorage implements ReviewStorage {
         return toReviewMap(rw);
     }
 
-    private void addEstimation(int reviewId, int userId, boolean isLike, int count) {
-        String sql = "INSERT INTO review_likes (review_id, user_id, is_positive) VALUES (?, ?, ?)";
-        int rowsAffected = jdbcTemplate.update(sql, reviewId, userId, isLike);
-        if (rowsAffected > 0) {
-            String updateUsefulSql = "UPDATE reviews SET useful = useful + ? WHERE review_id = ?";
-            jdbcTemplate.update(updateUsefulSql, count, reviewId);
+    // Upsert оценки возвращает прежнее значение, поэтому useful меняется ровно на разницу голосов.
+    // Строка отзыва блокируется первой: голоса по одному отзыву применяются строго по очереди
+    private Review vote(int reviewId, int userId, boolean isPositive) {
+        lockReview(reviewId);
+        String sql = "SELECT is_positive FROM OLD TABLE (" +
+                "MERGE INTO review_likes (review_id, user_id, is_positive) KEY (review_id, user_id) VALUES (?, ?, ?))";
+        List<Boolean> previous = jdbcTemplate.queryForList(sql, Boolean.class, reviewId, userId, isPositive);
+        int delta = score(isPositive) - (previous.isEmpty() ? 0 : score(previous.getFirst()));
+        return addUseful(reviewId, delta);
+    }
+
+    private Review unvote(int reviewId, int userId, boolean isPositive) {
+        lockReview(reviewId);
+        String sql = "SELECT is_positive FROM OLD TABLE (" +
+                "DELETE FROM review_likes WHERE review_id = ? AND user_id = ? AND is_positive = ?)";
+        List<Boolean> removed = jdbcTemplate.queryForList(sql, Boolean.class, reviewId, userId, isPositive);
+        return addUseful(reviewId, removed.isEmpty() ? 0 : -score(isPositive));
+    }
+
+    private void lockReview(int reviewId) {
+        String sql = "SELECT review_id FROM reviews WHERE review_id = ? FOR UPDATE";
+        if (jdbcTemplate.queryForList(sql, Integer.class, reviewId).isEmpty()) {
+            throw new NotFoundException("Отзыв с id = " + reviewId + " не найден");
         }
     }
 
-    private void deleteEstimation(int reviewId, int userId, boolean isLike, int count) {
-        String sql = "DELETE FROM review_likes WHERE review_id = ? AND user_id = ? AND is_positive = ?";
-        int rowsAffected = jdbcTemplate.update(sql, reviewId, userId, isLike);
-        if (rowsAffected > 0) {
-            String updateUsefulSql = "UPDATE reviews SET useful = useful + ? WHERE review_id = ?";
-            jdbcTemplate.update(updateUsefulSql, count, reviewId);
+    // Новое значение useful приходит вместе с обновлением, без отдельного чтения отзыва
+    private Review addUseful(int reviewId, int delta) {
+        String sql = "SELECT * FROM FINAL TABLE (" +
+                "UPDATE reviews SET useful = useful + ?, version = version + ? WHERE review_id = ?)";
+        Review review = jdbcTemplate.queryForObject(sql, this::mapRowToReview, delta, delta != 0 ? 1 : 0, reviewId);
+        if (delta != 0) {
+            eventPublisher.publishEvent(new ReviewChangedEvent(review.getFilmId()));
         }
+        return review;
+    }
+
+    private static int score(boolean isPositive) {
+        return isPositive ? 1 : -1;
     }
 }
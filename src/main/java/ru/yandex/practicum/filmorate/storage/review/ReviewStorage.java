@@ -2,7 +2,7 @@ package ru.yandex.practicum.filmorate.storage.review;
 
 import ru.yandex.practicum.filmorate.model.Review;
 
-import java.util.Collection;
+import java.util.List;
 
 public interface ReviewStorage {
 
@@ -14,9 +14,8 @@ public interface ReviewStorage {
 
     Review getReviewById(int id);
 
-    Collection<Review> getReviewsByFilmId(int id, int count);
-
-    Collection<Review> getAllReviews();
+    // filmId == null - отзывы ко всем фильмам; курсор afterUseful/afterId - последний отзыв предыдущей страницы
+    List<Review> getReviews(Integer filmId, int count, Integer afterUseful, Integer afterId);
 
     Review addLike(int reviewId, int userId);
 
@@ -25,4 +24,7 @@ public interface ReviewStorage {
     Review addDislike(int reviewId, int userId);
 
     Review removeDislike(int reviewId, int userId);
+
+    // Пересчитывает useful по таблице review_likes, возвращает число исправленных отзывов
+    int reconcileUseful();
 }
@@ -0,0 +1,85 @@
+package ru.yandex.practicum.filmorate.storage.review;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.storage.event.FilmDeletedEvent;
+import ru.yandex.practicum.filmorate.storage.event.ReviewChangedEvent;
+import ru.yandex.practicum.filmorate.storage.event.UserDeletedEvent;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Первые size отзывов по полезности для каждого фильма и для всех фильмов сразу.
+// Изменение отзыва или голос за него сбрасывает списки его фильма, следующий запрос загружает их заново.
+// Отзывы изменяемые, поэтому каждый вызов получает свои копии, а кэшированные экземпляры наружу не выходят
+@Component
+public class ReviewTopCache {
+    private static final int ALL_FILMS = -1;
+
+    private final int size;
+    private final Map<Integer, List<Review>> top = new HashMap<>();
+    // Загрузка, начатая до сброса, не должна вернуть в кэш устаревший список
+    private long generation;
+
+    public ReviewTopCache(@Value("${filmorate.reviews.top-size:50}") int size) {
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Первые limit отзывов, limit не больше size
+    public List<Review> top(Integer filmId, int limit, Supplier<List<Review>> loader) {
+        int key = filmId == null ? ALL_FILMS : filmId;
+        long loadedGeneration;
+        synchronized (this) {
+            List<Review> cached = top.get(key);
+            if (cached != null) {
+                return copy(cached, limit);
+            }
+            loadedGeneration = generation;
+        }
+        List<Review> loaded = List.copyOf(loader.get());
+        synchronized (this) {
+            if (generation == loadedGeneration) {
+                top.put(key, loaded);
+            }
+        }
+        return copy(loaded, limit);
+    }
+
+    public synchronized void clear() {
+        generation++;
+        top.clear();
+    }
+
+    private static List<Review> copy(List<Review> reviews, int limit) {
+        return reviews.stream()
+                .limit(limit)
+                .map(review -> review.toBuilder().build())
+                .toList();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onReviewChanged(ReviewChangedEvent event) {
+        generation++;
+        top.remove(event.filmId());
+        top.remove(ALL_FILMS);
+    }
+
+    // Удаление фильма или пользователя каскадом удаляет отзывы и голоса
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFilmDeleted(FilmDeletedEvent event) {
+        clear();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserDeleted(UserDeletedEvent event) {
+        clear();
+    }
+}
@@ -0,0 +1,99 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.model.LongSet;
+import ru.yandex.practicum.filmorate.storage.event.FilmDeletedEvent;
+import ru.yandex.practicum.filmorate.storage.event.FriendshipChangedEvent;
+import ru.yandex.practicum.filmorate.storage.event.LikeChangedEvent;
+import ru.yandex.practicum.filmorate.storage.event.UserDeletedEvent;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Лайки и друзья каждого пользователя отсортированными множествами id: общие фильмы и друзья - пересечение
+// слиянием. Память пропорциональна числу связей, а не наибольшему id
+@Slf4j
+@Component
+public class UserAdjacencyIndex {
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Long, LongSet> likedFilms = new HashMap<>();
+    private final Map<Long, LongSet> friends = new HashMap<>();
+
+    public UserAdjacencyIndex(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public synchronized List<Integer> commonFilms(long userId, long otherId) {
+        return intersect(likedFilms, userId, otherId).longStream().mapToObj(id -> (int) id).toList();
+    }
+
+    public synchronized List<Long> commonFriends(long userId, long otherId) {
+        return intersect(friends, userId, otherId).longStream().boxed().toList();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        likedFilms.clear();
+        friends.clear();
+        jdbcTemplate.query("SELECT user_id, film_id FROM likes", rs -> {
+            idsOf(likedFilms, rs.getLong("user_id")).add(rs.getLong("film_id"));
+        });
+        jdbcTemplate.query("SELECT user_id, friend_id FROM friendships", rs -> {
+            idsOf(friends, rs.getLong("user_id")).add(rs.getLong("friend_id"));
+        });
+        log.info("Индекс связей построен: лайки {} пользователей, друзья {} пользователей",
+                likedFilms.size(), friends.size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onLikeChanged(LikeChangedEvent event) {
+        update(likedFilms, event.userId(), event.filmId(), event.added());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onFriendshipChanged(FriendshipChangedEvent event) {
+        update(friends, event.userId(), event.friendId(), event.added());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onFilmDeleted(FilmDeletedEvent event) {
+        likedFilms.values().forEach(films -> films.remove(event.filmId()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onUserDeleted(UserDeletedEvent event) {
+        likedFilms.remove(event.userId());
+        friends.remove(event.userId());
+        friends.values().forEach(ids -> ids.remove(event.userId()));
+    }
+
+    private static void update(Map<Long, LongSet> index, long userId, long id, boolean added) {
+        if (added) {
+            idsOf(index, userId).add(id);
+        } else {
+            LongSet ids = index.get(userId);
+            if (ids != null) {
+                ids.remove(id);
+            }
+        }
+    }
+
+    private static LongSet intersect(Map<Long, LongSet> index, long userId, long otherId) {
+        LongSet first = index.get(userId);
+        LongSet second = index.get(otherId);
+        if (first == null || second == null) {
+            return new LongSet();
+        }
+        return first.intersect(second);
+    }
+
+    private static LongSet idsOf(Map<Long, LongSet> index, long userId) {
+        return index.computeIfAbsent(userId, id -> new LongSet());
+    }
+}
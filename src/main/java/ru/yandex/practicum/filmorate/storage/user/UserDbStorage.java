@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
@@ -8,12 +9,15 @@ import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.annotations.EventListen;
+import ru.yandex.practicum.filmorate.model.LongSet;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.event.FriendshipChangedEvent;
+import ru.yandex.practicum.filmorate.storage.event.LikeChangedEvent;
+import ru.yandex.practicum.filmorate.storage.event.UserDeletedEvent;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.sql.PreparedStatement;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 import static ru.yandex.practicum.filmorate.storage.RowMappers.USER_ROW_MAPPER;
 import static ru.yandex.practicum.filmorate.storage.RowMappers.toUserMap;
@@ -21,29 +25,30 @@ import static ru.yandex.practicum.filmorate.storage.RowMappers.toUserMap;
 @Repository
 @Qualifier("UserDbStorage")
 public class UserDbStorage implements UserStorage {
+    private static final int STREAM_CHUNK_SIZE = 500;
+
     private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public UserDbStorage(JdbcTemplate jdbcTemplate) {
+    public UserDbStorage(JdbcTemplate jdbcTemplate, ApplicationEventPublisher eventPublisher) {
         this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
     }
 
     @Override
     public User getById(long id) {
-        try {
-            return jdbcTemplate.queryForObject(
-                    "SELECT * FROM users WHERE user_id = ?",
-                    this::mapRowToUser,
-                    id
-            );
-        } catch (EmptyResultDataAccessException e) {
+        List<User> users = jdbcTemplate.query("SELECT * FROM users WHERE user_id = ?", USER_ROW_MAPPER, id);
+        if (users.isEmpty()) {
             throw new NotFoundException("Пользователь с id " + id + " не найден");
         }
+        return hydrate(users).getFirst();
     }
 
     @Override
     public User create(User user) {
         SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
                 .withTableName("users")
+                .usingColumns("email", "login", "name", "birthday")
                 .usingGeneratedKeyColumns("user_id");
 
         long userId = simpleJdbcInsert.executeAndReturnKey(userToMap(user)).longValue();
@@ -53,14 +58,16 @@ public class UserDbStorage implements UserStorage {
     @Override
     public User update(User user) {
         try {
-            String sql = "UPDATE users SET email = ?, login = ?, name = ?, birthday = ? WHERE user_id = ?";
+            String sql = "UPDATE users SET email = ?, login = ?, name = ?, birthday = ?, version = version + 1 " +
+                    "WHERE user_id = ?";
             jdbcTemplate.update(sql,
                     user.getEmail(),
                     user.getLogin(),
                     user.getName(),
                     user.getBirthday(),
                     user.getId());
-            updateFriendships(user.getId(), user.getFriends());
+            // Друзья меняются только через addFriend/removeFriend: так индекс дружбы получает событие
+            // на каждое ребро, а тело без friends не стирает дружбы пользователя
             return getById(user.getId());
         } catch (EmptyResultDataAccessException e) {
             return null;
@@ -70,16 +77,65 @@ public class UserDbStorage implements UserStorage {
     @Override
     public Collection<User> getAll() {
         String sql = "SELECT * FROM users";
-        return jdbcTemplate.query(sql, this::mapRowToUser);
+        return hydrate(jdbcTemplate.query(sql, USER_ROW_MAPPER));
+    }
+
+    // Курсор и догрузка друзей пачками идут в одной транзакции на одном соединении пула
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAll(Consumer<User> consumer) {
+        String sql = "SELECT * FROM users ORDER BY user_id";
+        List<User> chunk = new ArrayList<>(STREAM_CHUNK_SIZE);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ps.setFetchSize(STREAM_CHUNK_SIZE);
+            return ps;
+        }, rs -> {
+            chunk.add(USER_ROW_MAPPER.mapRow(rs, rs.getRow()));
+            if (chunk.size() == STREAM_CHUNK_SIZE) {
+                hydrate(chunk).forEach(consumer);
+                chunk.clear();
+            }
+        });
+        hydrate(chunk).forEach(consumer);
+    }
+
+    @Override
+    public List<User> getUsersByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String sql = "SELECT * FROM users WHERE user_id = ANY(?) ORDER BY user_id";
+        Object[] args = {ids.toArray(new Long[0])};
+        return hydrate(jdbcTemplate.query(sql, USER_ROW_MAPPER, args));
+    }
+
+    @Override
+    public List<User> getPage(long afterId, int limit) {
+        String sql = "SELECT * FROM users WHERE user_id > ? ORDER BY user_id LIMIT ?";
+        return hydrate(jdbcTemplate.query(sql, USER_ROW_MAPPER, afterId, limit));
     }
 
     @Override
     @Transactional
     public boolean delete(long id) {
         User user = getById(id);
+        jdbcTemplate.update("UPDATE users SET version = version + 1 " +
+                "WHERE user_id IN (SELECT user_id FROM friendships WHERE friend_id = ?)", id);
         jdbcTemplate.update("DELETE FROM friendships WHERE user_id = ? OR friend_id = ?", id, id);
+        List<Integer> likedFilmIds = jdbcTemplate.queryForList(
+                "SELECT film_id FROM likes WHERE user_id = ?", Integer.class, id);
+        jdbcTemplate.update("UPDATE films SET likes_count = likes_count - 1, version = version + 1 " +
+                "WHERE film_id IN (SELECT film_id FROM likes WHERE user_id = ?)", id);
+        jdbcTemplate.update("UPDATE genre_popularity SET likes_count = likes_count - 1 " +
+                "WHERE film_id IN (SELECT film_id FROM likes WHERE user_id = ?)", id);
         jdbcTemplate.update("DELETE FROM likes WHERE user_id = ?", id);
-        return jdbcTemplate.update("DELETE FROM users WHERE user_id = ?", id) > 0;
+        likedFilmIds.forEach(filmId -> eventPublisher.publishEvent(new LikeChangedEvent(filmId, id, false)));
+        boolean deleted = jdbcTemplate.update("DELETE FROM users WHERE user_id = ?", id) > 0;
+        if (deleted) {
+            eventPublisher.publishEvent(new UserDeletedEvent(id));
+        }
+        return deleted;
     }
 
     @Override
@@ -87,6 +143,8 @@ public class UserDbStorage implements UserStorage {
     public User addFriend(long userId, long friendId) {
         String sql = "INSERT INTO friendships (user_id, friend_id) VALUES (?, ?)";
         jdbcTemplate.update(sql, userId, friendId);
+        bumpVersion(userId);
+        eventPublisher.publishEvent(new FriendshipChangedEvent(userId, friendId, true));
         return getById(userId);
     }
 
@@ -94,97 +152,60 @@ public class UserDbStorage implements UserStorage {
     @EventListen(eventType = "FRIEND", operation = "REMOVE")
     public User removeFriend(long userId, long friendId) {
         String sql = "DELETE FROM friendships WHERE user_id = ? AND friend_id = ?";
-        jdbcTemplate.update(sql, userId, friendId);
+        if (jdbcTemplate.update(sql, userId, friendId) > 0) {
+            bumpVersion(userId);
+            eventPublisher.publishEvent(new FriendshipChangedEvent(userId, friendId, false));
+        }
         return getById(userId);
     }
 
     @Override
     public List<User> getFriends(long userId) {
-        try {
-            String sql = "SELECT u.* FROM users u JOIN friendships f ON u.user_id = f.friend_id WHERE f.user_id = ?";
-            return jdbcTemplate.query(sql, this::mapRowToUser, userId);
-        } catch (EmptyResultDataAccessException e) {
-            return null;
-        }
-    }
-
-    @Override
-    public List<User> getCommonFriends(long userId, long otherId) {
-        String sql = "SELECT u.* FROM users u " +
-                "JOIN friendships f1 ON u.user_id = f1.friend_id " +
-                "JOIN friendships f2 ON u.user_id = f2.friend_id " +
-                "WHERE f1.user_id = ? AND f2.user_id = ?";
-        return jdbcTemplate.query(sql, this::mapRowToUser, userId, otherId);
+        String sql = "SELECT u.* FROM users u JOIN friendships f ON u.user_id = f.friend_id WHERE f.user_id = ?";
+        return hydrate(jdbcTemplate.query(sql, USER_ROW_MAPPER, userId));
     }
 
     @Override
-    public List<Integer> getRecommendedFilms(long userId) {
-
-        if (!userExists(userId)) {
-            throw new NotFoundException("Пользователь с id " + userId + " не найден");
+    public long getVersion(long id) {
+        List<Long> versions = jdbcTemplate.queryForList("SELECT version FROM users WHERE user_id = ?", Long.class, id);
+        if (versions.isEmpty()) {
+            throw new NotFoundException("Пользователь с id " + id + " не найден");
         }
-
-        String similarUsersQuery = "SELECT l2.user_id, COUNT(l2.film_id) AS common_likes " +
-                "FROM likes l1 " +
-                "JOIN likes l2 ON l1.film_id = l2.film_id AND l1.user_id != l2.user_id " +
-                "WHERE l1.user_id = ? " +
-                "GROUP BY l2.user_id " +
-                "ORDER BY common_likes DESC " +
-                "LIMIT 1";
-
-        List<Long> similarUserIds = jdbcTemplate.query(similarUsersQuery,
-                (rs, rowNum) -> rs.getLong("user_id"),
-                userId);
-
-        Long similarUserId = similarUserIds.getFirst();
-
-        String recFilmsSql =
-                "SELECT film_id FROM likes " +
-                        "WHERE user_id = ? " +
-                        "  AND film_id NOT IN (SELECT film_id FROM likes WHERE user_id = ?)";
-        return jdbcTemplate.queryForList(recFilmsSql, Integer.class,
-                similarUserId, userId);
+        return versions.getFirst();
     }
 
-
     @Override
     public boolean userExists(long userId) {
-        Integer count = jdbcTemplate.queryForObject(
-                "SELECT COUNT(*) FROM users WHERE user_id = ?",
-                Integer.class,
-                userId
-        );
-        return count > 0;
-    }
-
-    private Map<String, Object> userToMap(User user) {
-        return toUserMap(user);
+        String sql = "SELECT EXISTS (SELECT 1 FROM users WHERE user_id = ?)";
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, Boolean.class, userId));
     }
 
-    private User mapRowToUser(ResultSet rs, int rowNum) throws SQLException {
-        User user = USER_ROW_MAPPER.mapRow(rs, rowNum);
-        user.setFriends(getFriendsForUser(user.getId()));
-        return user;
+    // Список друзей входит в ответ с пользователем, поэтому его изменение тоже меняет версию
+    private void bumpVersion(long userId) {
+        jdbcTemplate.update("UPDATE users SET version = version + 1 WHERE user_id = ?", userId);
     }
 
-    private Set<Long> getFriendsForUser(long userId) {
-        String sql = "SELECT friend_id FROM friendships WHERE user_id = ?";
-        return new HashSet<>(jdbcTemplate.queryForList(sql, Long.class, userId));
+    private Map<String, Object> userToMap(User user) {
+        return toUserMap(user);
     }
 
-    private void updateFriendships(long userId, Set<Long> friends) {
-        jdbcTemplate.update("DELETE FROM friendships WHERE user_id = ?", userId);
-        if (friends != null && !friends.isEmpty()) {
-
-            List<Object[]> batchArgs = friends.stream()
-                    .map(friendId -> new Object[]{userId, friendId})
-                    .collect(Collectors.toList());
-
-            jdbcTemplate.batchUpdate(
-                    "INSERT INTO friendships (user_id, friend_id) VALUES (?, ?)",
-                    batchArgs
-            );
+    // Догружает друзей для всего списка пользователей одним запросом
+    private List<User> hydrate(List<User> users) {
+        if (users.isEmpty()) {
+            return users;
         }
+        Map<Long, User> usersById = new HashMap<>();
+        for (User user : users) {
+            user.setFriends(new LongSet());
+            usersById.put(user.getId(), user);
+        }
+        Object[] ids = {usersById.keySet().toArray(new Long[0])};
+
+        String sql = "SELECT user_id, friend_id FROM friendships WHERE user_id = ANY(?) ORDER BY user_id, friend_id";
+        jdbcTemplate.query(sql, rs -> {
+            usersById.get(rs.getLong("user_id")).getFriends().add(rs.getLong("friend_id"));
+        }, ids);
+        return users;
     }
 
     @Override
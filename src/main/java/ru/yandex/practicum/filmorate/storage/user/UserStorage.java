@@ -3,6 +3,7 @@ package ru.yandex.practicum.filmorate.storage.user;
 import ru.yandex.practicum.filmorate.model.User;
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface UserStorage {
 
@@ -12,8 +13,17 @@ public interface UserStorage {
 
     Collection<User> getAll();
 
+    void streamAll(Consumer<User> consumer);
+
+    List<User> getPage(long afterId, int limit);
+
+    List<User> getUsersByIds(Collection<Long> ids);
+
     User getById(long id);
 
+    // Версия пользователя для ETag: одно чтение по ключу без загрузки друзей
+    long getVersion(long id);
+
     boolean delete(long id);
 
     User addFriend(long userId, long friendId);
@@ -22,12 +32,8 @@ public interface UserStorage {
 
     List<User> getFriends(long userId);
 
-    List<User> getCommonFriends(long userId, long otherId);
-
     boolean isFriends(long userId, long friendId);
 
-    List<Integer> getRecommendedFilms(long userId);
-
     boolean userExists(long userId);
 
 }
\ No newline at end of file
@@ -8,6 +8,7 @@ CREATE TABLE IF NOT EXISTS mpa_rating (
 CREATE TABLE IF NOT EXISTS directors (
     director_id BIGINT GENERATED BY DEFAULT AS IDENTITY,
     name VARCHAR(100) NOT NULL,
+    version BIGINT DEFAULT 0 NOT NULL,
     PRIMARY KEY (director_id)
 );
 
@@ -23,7 +24,8 @@ CREATE TABLE IF NOT EXISTS users (
     email VARCHAR(100) NOT NULL UNIQUE,
     login VARCHAR(50) NOT NULL UNIQUE,
     name VARCHAR(100),
-    birthday DATE NOT NULL
+    birthday DATE NOT NULL,
+    version BIGINT DEFAULT 0 NOT NULL
 );
 
 -- Таблица фильмов
@@ -33,7 +35,11 @@ CREATE TABLE IF NOT EXISTS films (
     description VARCHAR(200),
     release_date DATE NOT NULL,
     duration INTEGER NOT NULL,
-    rating_id INTEGER REFERENCES mpa_rating(rating_id)
+    rating_id INTEGER REFERENCES mpa_rating(rating_id),
+    likes_count INTEGER DEFAULT 0 NOT NULL,
+    release_year INTEGER GENERATED ALWAYS AS (EXTRACT(YEAR FROM release_date)),
+    -- Растет при каждом изменении, видимом в ответе: полях, жанрах, режиссерах, лайках
+    version BIGINT DEFAULT 0 NOT NULL
 );
 
 -- Таблица связей фильмов и жанров (многие-ко-многим)
@@ -43,6 +49,16 @@ CREATE TABLE IF NOT EXISTS film_genres (
     PRIMARY KEY (film_id, genre_id)
 );
 
+-- Сводка популярности для фильтров по жанру и году: строка на пару (жанр, фильм),
+-- счетчик лайков и год выпуска повторяют films
+CREATE TABLE IF NOT EXISTS genre_popularity (
+    genre_id INTEGER REFERENCES genres(genre_id) ON DELETE CASCADE,
+    film_id BIGINT REFERENCES films(film_id) ON DELETE CASCADE,
+    release_year INTEGER NOT NULL,
+    likes_count INTEGER DEFAULT 0 NOT NULL,
+    PRIMARY KEY (genre_id, film_id)
+);
+
 -- Таблица связей фильмов и режиссеров
 CREATE TABLE IF NOT EXISTS film_directors (
     film_id BIGINT REFERENCES films(film_id) ON DELETE CASCADE,
@@ -80,7 +96,8 @@ CREATE TABLE IF NOT EXISTS reviews (
     film_id BIGINT REFERENCES films(film_id) ON DELETE CASCADE,
     useful BIGINT DEFAULT 0,
     is_positive BOOLEAN NOT NULL,
-    content VARCHAR(500)
+    content VARCHAR(500),
+    version BIGINT DEFAULT 0 NOT NULL
 );
 
 CREATE TABLE IF NOT EXISTS review_likes (
@@ -88,4 +105,27 @@ CREATE TABLE IF NOT EXISTS review_likes (
     user_id BIGINT REFERENCES users(user_id) ON DELETE CASCADE,
     is_positive BOOLEAN NOT NULL,
     PRIMARY KEY (review_id, user_id)
-);
\ No newline at end of file
+);
+
+-- Миграции для уже существующих баз
+ALTER TABLE films ADD COLUMN IF NOT EXISTS likes_count INTEGER DEFAULT 0 NOT NULL;
+ALTER TABLE films ADD COLUMN IF NOT EXISTS release_year INTEGER GENERATED ALWAYS AS (EXTRACT(YEAR FROM release_date));
+INSERT INTO genre_popularity (genre_id, film_id, release_year, likes_count)
+SELECT fg.genre_id, f.film_id, f.release_year, f.likes_count
+FROM film_genres fg
+JOIN films f ON f.film_id = fg.film_id
+WHERE NOT EXISTS (SELECT 1 FROM genre_popularity gp WHERE gp.genre_id = fg.genre_id AND gp.film_id = fg.film_id);
+ALTER TABLE films ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE users ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE reviews ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE directors ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL;
+
+-- Индексы
+CREATE INDEX IF NOT EXISTS idx_films_likes_count ON films (likes_count DESC, film_id);
+CREATE INDEX IF NOT EXISTS idx_films_year_likes ON films (release_year, likes_count DESC, film_id);
+CREATE INDEX IF NOT EXISTS idx_genre_popularity_rank ON genre_popularity (genre_id, likes_count DESC, film_id);
+CREATE INDEX IF NOT EXISTS idx_genre_popularity_year_rank
+    ON genre_popularity (genre_id, release_year, likes_count DESC, film_id);
+CREATE INDEX IF NOT EXISTS idx_feed_user_event ON feed (user_id, event_id);
+CREATE INDEX IF NOT EXISTS idx_reviews_useful ON reviews (useful DESC, review_id);
+CREATE INDEX IF NOT EXISTS idx_reviews_film_useful ON reviews (film_id, useful DESC, review_id);
@@ -0,0 +1,124 @@
+package filmorate.integration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.config.TimeoutAwareJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Поведение при исчерпании пула соединений и долгих запросах
+@SpringBootTest(classes = FilmorateApplication.class, properties = {
+        "spring.datasource.hikari.maximum-pool-size=2",
+        "spring.datasource.hikari.minimum-idle=2",
+        "spring.datasource.hikari.connection-timeout=250"
+})
+@AutoConfigureMockMvc
+class DataSourceLimitsIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @AfterEach
+    void tearDown() {
+        TimeoutAwareJdbcTemplate.clearTimeoutOverride();
+    }
+
+    @Test
+    void shouldAnswerServiceUnavailableWhenPoolIsExhausted() throws Exception {
+        List<Connection> held = new ArrayList<>();
+        try {
+            for (int i = 0; i < 2; i++) {
+                held.add(dataSource.getConnection());
+            }
+
+            mockMvc.perform(get("/users").param("limit", "10"))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(jsonPath("$.error").exists());
+        } finally {
+            for (Connection connection : held) {
+                connection.close();
+            }
+        }
+
+        assertThat(meterRegistry.get("hikaricp.connections.timeout").tag("pool", "filmorate").counter().count())
+                .isGreaterThanOrEqualTo(1);
+        assertThat(meterRegistry.get("hikaricp.connections.max").tag("pool", "filmorate").gauge().value())
+                .isEqualTo(2);
+        mockMvc.perform(get("/users").param("limit", "10")).andExpect(status().isOk());
+    }
+
+    @Test
+    void shouldStreamFilmsOnSingleConnection() throws Exception {
+        // Больше одной пачки, чтобы догрузка шла при открытом курсоре
+        jdbcTemplate.update("INSERT INTO films (name, description, release_date, duration, rating_id) " +
+                "SELECT 'Streamed', 'Description', DATE '2000-01-01', 120, 1 FROM SYSTEM_RANGE(1, 600)");
+        try (Connection ignored = dataSource.getConnection()) {
+            // Свободно одно соединение из двух: курсору и догрузке пачек его должно хватить
+            MvcResult streaming = mockMvc.perform(get("/films"))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            mockMvc.perform(asyncDispatch(streaming))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$[?(@.name == 'Streamed')]", hasSize(600)));
+        } finally {
+            jdbcTemplate.update("DELETE FROM films WHERE name = 'Streamed'");
+        }
+    }
+
+    @Test
+    void shouldStreamUsersOnSingleConnection() throws Exception {
+        jdbcTemplate.update("INSERT INTO users (email, login, birthday) " +
+                "SELECT 'streamed' || X || '@mail.com', 'streamed' || X, DATE '1990-01-01' FROM SYSTEM_RANGE(1, 600)");
+        try (Connection ignored = dataSource.getConnection()) {
+            MvcResult streaming = mockMvc.perform(get("/users"))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            mockMvc.perform(asyncDispatch(streaming))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$[?(@.login =~ /streamed.*/)]", hasSize(600)));
+        } finally {
+            jdbcTemplate.update("DELETE FROM users WHERE login LIKE 'streamed%'");
+        }
+    }
+
+    @Test
+    void shouldCancelQueryAfterOverriddenTimeout() {
+        TimeoutAwareJdbcTemplate.overrideTimeout(1);
+        long started = System.nanoTime();
+
+        assertThatThrownBy(() -> jdbcTemplate.queryForObject(
+                "SELECT SUM(X) FROM SYSTEM_RANGE(1, 10000000000)", Long.class))
+                .isInstanceOf(QueryTimeoutException.class);
+        assertThat(System.nanoTime() - started).isLessThan(5_000_000_000L);
+    }
+}
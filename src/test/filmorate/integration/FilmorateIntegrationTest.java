@@ -3,26 +3,50 @@ package filmorate.integration;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.model.FeedEvent;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.MpaRating;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FeedService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.feed.FeedWriteBehindSink;
 import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
 import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
 import ru.yandex.practicum.filmorate.storage.mpa.MpaDbStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest(classes = FilmorateApplication.class)
+@AutoConfigureMockMvc
 class FilmorateIntegrationTest {
 
+    @Autowired
+    private MockMvc mockMvc;
+
     @Autowired
     private UserDbStorage userStorage;
 
@@ -35,9 +59,18 @@ class FilmorateIntegrationTest {
     @Autowired
     private MpaDbStorage mpaStorage;
 
+    @Autowired
+    private FeedService feedService;
+
+    @Autowired
+    private UserService userService;
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private ApplicationContext applicationContext;
+
     @BeforeEach
     void setUp() {
         jdbcTemplate.update("DELETE FROM film_genres");
@@ -83,6 +116,14 @@ class FilmorateIntegrationTest {
                 .containsExactly(createdFilm2.getId(), createdFilm1.getId());
     }
 
+    @Test
+    void shouldNotStartWriteBehindQueueInTransactionalMode() {
+        assertThat(applicationContext.getBeansOfType(FeedWriteBehindSink.class)).isEmpty();
+        assertThat(Thread.getAllStackTraces().keySet())
+                .extracting(Thread::getName)
+                .doesNotContain("feed-writer");
+    }
+
     @Test
     void shouldHandleFilmWithGenresAndMpa() {
         // Получаем данные из справочников
@@ -128,7 +169,7 @@ class FilmorateIntegrationTest {
         userStorage.addFriend(user2.getId(), commonFriend.getId());
 
         // Получаем общих друзей
-        List<User> commonFriends = userStorage.getCommonFriends(user1.getId(), user2.getId());
+        List<User> commonFriends = userService.getCommonFriends(user1.getId(), user2.getId());
 
         assertThat(commonFriends)
                 .hasSize(1)
@@ -136,6 +177,130 @@ class FilmorateIntegrationTest {
                 .containsExactly(commonFriend.getId());
     }
 
+    @Test
+    void shouldStreamAllFilmsAndPageByKeyset() throws Exception {
+        User user = userStorage.create(createTestUser("user1@mail.com", "user1"));
+        Film film1 = filmStorage.create(createTestFilm("Film 1", 1, List.of(1)));
+        Film film2 = filmStorage.create(createTestFilm("Film 2", 2, List.of()));
+        filmStorage.addLike(film1.getId(), user.getId());
+
+        MvcResult streaming = mockMvc.perform(get("/films"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(streaming))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].id").value(film1.getId()))
+                .andExpect(jsonPath("$[0].likes[0]").value(user.getId()))
+                .andExpect(jsonPath("$[0].genres[0].id").value(1))
+                .andExpect(jsonPath("$[1].id").value(film2.getId()));
+
+        mockMvc.perform(get("/films").param("afterId", String.valueOf(film1.getId())).param("limit", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].id").value(film2.getId()));
+    }
+
+    @Test
+    void shouldPageUserFeedWithCursor() throws Exception {
+        User user = userStorage.create(createTestUser("user1@mail.com", "user1"));
+        Film film1 = filmStorage.create(createTestFilm("Film 1", 1, List.of()));
+        Film film2 = filmStorage.create(createTestFilm("Film 2", 1, List.of()));
+        filmStorage.addLike(film1.getId(), user.getId());
+        filmStorage.addLike(film2.getId(), user.getId());
+        filmStorage.removeLike(film1.getId(), user.getId());
+
+        MvcResult firstPage = mockMvc.perform(get("/users/{id}/feed", user.getId()).param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].entityId").value(film1.getId()))
+                .andExpect(header().exists("X-Next-Cursor"))
+                .andReturn();
+        String cursor = firstPage.getResponse().getHeader("X-Next-Cursor");
+
+        mockMvc.perform(get("/users/{id}/feed", user.getId()).param("cursor", cursor).param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].operation").value("REMOVE"))
+                .andExpect(header().doesNotExist("X-Next-Cursor"));
+
+        mockMvc.perform(get("/users/{id}/feed", user.getId()).param("cursor", "not-a-cursor"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldKeepFeedCompleteAndOrderedUnderConcurrentLikes() throws Exception {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            users.add(userStorage.create(createTestUser("user" + i + "@mail.com", "user" + i)));
+        }
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            films.add(filmStorage.create(createTestFilm("Film " + i, 1, List.of())));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(users.size());
+        List<Future<?>> tasks = new ArrayList<>();
+        for (User user : users) {
+            tasks.add(executor.submit(() -> {
+                films.forEach(film -> filmStorage.addLike(film.getId(), user.getId()));
+                filmStorage.removeLike(films.getFirst().getId(), user.getId());
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        executor.shutdown();
+
+        List<Long> expectedEntities = new ArrayList<>();
+        films.forEach(film -> expectedEntities.add((long) film.getId()));
+        expectedEntities.add((long) films.getFirst().getId());
+        for (User user : users) {
+            List<FeedEvent> feed = feedService.getUserFeed(user.getId());
+
+            assertThat(feed).extracting(FeedEvent::getEntityId).containsExactlyElementsOf(expectedEntities);
+            assertThat(feed.getLast().getOperation()).isEqualTo("REMOVE");
+            assertThat(feed).extracting(FeedEvent::getEventId).isSorted().doesNotHaveDuplicates();
+        }
+    }
+
+    @Test
+    void shouldAcceptDuplicateLikesOnceWithoutErrors() throws Exception {
+        User user = userStorage.create(createTestUser("user1@mail.com", "user1"));
+        Film film = filmStorage.create(createTestFilm("Film 1", 1, List.of()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> requests = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            requests.add(executor.submit(() -> mockMvc.perform(put("/films/{id}/like/{userId}", film.getId(), user.getId()))
+                    .andReturn().getResponse().getStatus()));
+        }
+        for (Future<Integer> request : requests) {
+            assertThat(request.get()).isEqualTo(200);
+        }
+        executor.shutdown();
+        mockMvc.perform(delete("/films/{id}/like/{userId}", film.getId(), user.getId()))
+                .andExpect(status().isOk());
+        mockMvc.perform(delete("/films/{id}/like/{userId}", film.getId(), user.getId()))
+                .andExpect(status().isOk());
+
+        assertThat(feedService.getUserFeed(user.getId()))
+                .extracting(FeedEvent::getOperation)
+                .containsExactly("ADD", "REMOVE");
+        assertThat(jdbcTemplate.queryForObject("SELECT likes_count FROM films WHERE film_id = ?",
+                Integer.class, film.getId())).isZero();
+    }
+
+    @Test
+    void shouldLetClientsCacheReferenceData() throws Exception {
+        mockMvc.perform(get("/genres"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "max-age=86400, public"));
+        mockMvc.perform(get("/mpa/{id}", 1))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "max-age=86400, public"));
+    }
+
     private User createTestUser(String email, String login) {
         return User.builder()
                 .email(email)
@@ -0,0 +1,202 @@
+package filmorate.integration;
+
+import filmorate.support.QueryCounter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Сколько запросов к базе стоит каждый эндпоинт лайков и друзей
+@SpringBootTest(classes = FilmorateApplication.class)
+@AutoConfigureMockMvc
+@Import(QueryCounter.class)
+class QueryCountIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private QueryCounter queryCounter;
+
+    @Autowired
+    private FilmDbStorage filmStorage;
+
+    @Autowired
+    private UserDbStorage userStorage;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private long userId;
+    private long friendId;
+    private int filmId;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM film_genres");
+        jdbcTemplate.update("DELETE FROM likes");
+        jdbcTemplate.update("DELETE FROM friendships");
+        jdbcTemplate.update("DELETE FROM films");
+        jdbcTemplate.update("DELETE FROM users");
+        userId = userStorage.create(createTestUser("user")).getId();
+        friendId = userStorage.create(createTestUser("friend")).getId();
+        filmId = filmStorage.create(createTestFilm()).getId();
+    }
+
+    @Test
+    void shouldCheckLikeTargetsWithoutLoadingThem() throws Exception {
+        // До перехода на внешние ключи лайк стоил 10 запросов: 2 проверки существования, вставка,
+        // счетчики в films и в сводке по жанрам, лента и 4 запроса на ответ.
+        // Теперь: вставка, счетчик вместе со строкой фильма, 3 догрузки ответа и лента
+        assertThat(queries(put("/films/{id}/like/{userId}", filmId, userId))).isEqualTo(6);
+        // Повторный лайк: вставка ничего не меняет, ответ читается целиком
+        assertThat(queries(put("/films/{id}/like/{userId}", filmId, userId))).isEqualTo(5);
+        assertThat(queries(delete("/films/{id}/like/{userId}", filmId, userId))).isEqualTo(6);
+        // Несуществующего пользователя или фильм ловит внешний ключ той же вставки
+        mockMvc.perform(put("/films/{id}/like/{userId}", filmId, -1)).andExpect(status().isNotFound());
+        assertThat(queries(put("/films/{id}/like/{userId}", filmId, -1))).isEqualTo(1);
+        assertThat(queries(put("/films/{id}/like/{userId}", -1, userId))).isEqualTo(1);
+
+        // У фильма с жанрами счетчик копируется еще и в сводку по жанрам
+        Film withGenre = createTestFilm();
+        withGenre.setGenres(List.of(new Genre(1, null)));
+        int genreFilmId = filmStorage.create(withGenre).getId();
+        assertThat(queries(put("/films/{id}/like/{userId}", genreFilmId, userId))).isEqualTo(7);
+    }
+
+    @Test
+    void shouldCheckFriendsWithoutLoadingThem() throws Exception {
+        // Изменение списка друзей поднимает версию пользователя для ETag
+        assertThat(queries(put("/users/{id}/friends/{friendId}", userId, friendId))).isEqualTo(8);
+        assertThat(queries(get("/users/{id}/friends", userId))).isEqualTo(3);
+        assertThat(queries(delete("/users/{id}/friends/{friendId}", userId, friendId))).isEqualTo(7);
+        assertThat(queries(delete("/users/{id}/friends/{friendId}", -1, friendId))).isEqualTo(1);
+    }
+
+    @Test
+    void shouldLoadFriendsOfListedUsersInOneQuery() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            long otherId = userStorage.create(createTestUser("other" + i)).getId();
+            userStorage.addFriend(userId, otherId);
+            userStorage.addFriend(friendId, otherId);
+            userStorage.addFriend(otherId, userId);
+        }
+
+        // Пользователи и их друзья - по запросу независимо от числа строк
+        assertThat(streamedQueries(get("/users"))).isEqualTo(2);
+        // Проверка существования, друзья и их списки друзей
+        assertThat(queries(get("/users/{id}/friends", userId))).isEqualTo(3);
+        // Общие друзья считаются в памяти, загружаются только найденные пользователи
+        assertThat(queries(get("/users/{id}/friends/common/{otherId}", userId, friendId))).isEqualTo(2);
+    }
+
+    @Test
+    void shouldAnswerNotModifiedFromVersionAlone() throws Exception {
+        String filmEtag = etag(get("/films/{id}", filmId));
+        assertThat(queries(get("/films/{id}", filmId).header(HttpHeaders.IF_NONE_MATCH, filmEtag))).isEqualTo(1);
+        mockMvc.perform(get("/films/{id}", filmId).header(HttpHeaders.IF_NONE_MATCH, filmEtag))
+                .andExpect(status().isNotModified());
+
+        filmStorage.addLike(filmId, userId);
+        assertThat(etag(get("/films/{id}", filmId).header(HttpHeaders.IF_NONE_MATCH, filmEtag)))
+                .isNotEqualTo(filmEtag);
+
+        String userEtag = etag(get("/users/{id}", userId));
+        mockMvc.perform(get("/users/{id}", userId).header(HttpHeaders.IF_NONE_MATCH, userEtag))
+                .andExpect(status().isNotModified());
+        userStorage.addFriend(userId, friendId);
+        assertThat(etag(get("/users/{id}", userId).header(HttpHeaders.IF_NONE_MATCH, userEtag)))
+                .isNotEqualTo(userEtag);
+    }
+
+    private String etag(MockHttpServletRequestBuilder request) throws Exception {
+        return mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
+    @Test
+    void shouldBindPopularFiltersWithoutChangingStatementText() {
+        Film film = createTestFilm();
+        film.setGenres(List.of(new Genre(1, null)));
+        filmStorage.create(film);
+
+        queryCounter.reset();
+        filmStorage.getPopularFilms(10, 1, 2000);
+        filmStorage.getPopularFilms(10, 1, null);
+        filmStorage.getPopularFilms(10, null, 2000);
+        filmStorage.getPopularFilms(10, null, null);
+        Set<String> shapes = new HashSet<>(queryCounter.sqlTexts());
+
+        // Другие жанры, годы и размеры выборки не порождают новых текстов для разбора
+        queryCounter.reset();
+        for (int genreId = 1; genreId <= 6; genreId++) {
+            for (int year = 1995; year <= 2005; year++) {
+                filmStorage.getPopularFilms(genreId + year % 5, genreId, year);
+                filmStorage.getPopularFilms(5, genreId, null);
+                filmStorage.getPopularFilms(5, null, year);
+            }
+        }
+        assertThat(queryCounter.sqlTexts()).isNotEmpty();
+        assertThat(shapes).containsAll(queryCounter.sqlTexts());
+    }
+
+    private int queries(RequestBuilder request) throws Exception {
+        queryCounter.reset();
+        mockMvc.perform(request);
+        return queryCounter.count();
+    }
+
+    private int streamedQueries(RequestBuilder request) throws Exception {
+        queryCounter.reset();
+        MvcResult result = mockMvc.perform(request).andReturn();
+        mockMvc.perform(asyncDispatch(result));
+        return queryCounter.count();
+    }
+
+    private User createTestUser(String login) {
+        return User.builder()
+                .email(login + "@mail.com")
+                .login(login)
+                .name(login)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build();
+    }
+
+    private Film createTestFilm() {
+        return Film.builder()
+                .name("Film")
+                .description("Description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(120)
+                .mpa(new MpaRating(1, null))
+                .build();
+    }
+}
@@ -0,0 +1,75 @@
+package filmorate.integration;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Профиль virtual: соединения раздает только пул Hikari, виртуальные потоки сверх его размера ждут в нем
+@SpringBootTest(classes = FilmorateApplication.class, properties = {
+        "spring.datasource.hikari.maximum-pool-size=2",
+        "spring.datasource.hikari.minimum-idle=2",
+        "spring.datasource.hikari.connection-timeout=5000"
+})
+@ActiveProfiles("virtual")
+@AutoConfigureMockMvc
+class VirtualThreadsIntegrationTest {
+    private static final int STREAMS = 8;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldServeNestedQueriesAtFullConcurrency() throws Exception {
+        assertThat(dataSource).isInstanceOf(HikariDataSource.class);
+        // Больше одной пачки: каждый поток читает курсор и догружает пачки, пока все соединения пула заняты
+        jdbcTemplate.update("INSERT INTO films (name, description, release_date, duration, rating_id) " +
+                "SELECT 'Virtual', 'Description', DATE '2000-01-01', 120, 1 FROM SYSTEM_RANGE(1, 600)");
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> streams = new ArrayList<>();
+            for (int i = 0; i < STREAMS; i++) {
+                streams.add(executor.submit(() -> {
+                    MvcResult streaming = mockMvc.perform(get("/films"))
+                            .andExpect(request().asyncStarted())
+                            .andReturn();
+                    mockMvc.perform(asyncDispatch(streaming))
+                            .andExpect(status().isOk())
+                            .andExpect(jsonPath("$[?(@.name == 'Virtual')]", hasSize(600)));
+                    return null;
+                }));
+            }
+            for (Future<?> stream : streams) {
+                stream.get();
+            }
+        } finally {
+            jdbcTemplate.update("DELETE FROM films WHERE name = 'Virtual'");
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package filmorate.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.LongSet;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LongSetTest {
+    private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+
+    @Test
+    void shouldKeepIdsSortedAndUnique() {
+        LongSet set = LongSet.of(5, 1, 3, 5, 1);
+
+        assertThat(set).containsExactly(1L, 3L, 5L);
+        assertThat(set.contains(3)).isTrue();
+        assertThat(set.remove(3)).isTrue();
+        assertThat(set.remove(3)).isFalse();
+        assertThat(set.toLongArray()).containsExactly(1, 5);
+    }
+
+    @Test
+    void shouldIntersectSortedSets() {
+        LongSet first = LongSet.of(1, 4, 7, 10, 3_000_000_000L);
+        LongSet second = LongSet.of(2, 4, 10, 11, 3_000_000_000L);
+
+        assertThat(first.intersect(second)).containsExactly(4L, 10L, 3_000_000_000L);
+        assertThat(second.intersect(first)).isEqualTo(first.intersect(second));
+        assertThat(first.intersect(new LongSet())).isEmpty();
+    }
+
+    @Test
+    void shouldBehaveAsSetOfLongs() {
+        LongSet set = LongSet.of(1, 2, 3);
+
+        assertThat(set).isEqualTo(Set.of(1L, 2L, 3L));
+        assertThat(set.hashCode()).isEqualTo(Set.of(1L, 2L, 3L).hashCode());
+        assertThat(LongSet.copyOf(List.of(3L, 2L, 1L))).isEqualTo(set);
+    }
+
+    @Test
+    void shouldSerializeLikeBoxedSet() throws Exception {
+        LongSet set = LongSet.of(42, 7, 1000000000000L);
+
+        String json = mapper.writeValueAsString(set);
+
+        assertThat(json).isEqualTo(mapper.writeValueAsString(new TreeSet<>(set)));
+        assertThat(mapper.readValue(json, LongSet.class)).isEqualTo(set);
+    }
+
+    @Test
+    void shouldRoundTripFilmLikes() throws Exception {
+        Film film = Film.builder()
+                .name("Film")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100)
+                .likes(LongSet.of(3, 1, 2))
+                .build();
+
+        String json = mapper.writeValueAsString(film);
+
+        assertThat(json).contains("\"likes\":[1,2,3]");
+        assertThat(mapper.readValue("{\"likes\":[3,1,2]}", Film.class).getLikes())
+                .isEqualTo(LongSet.of(1, 2, 3));
+    }
+}
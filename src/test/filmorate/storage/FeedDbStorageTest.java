@@ -0,0 +1,76 @@
+package filmorate.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import ru.yandex.practicum.filmorate.model.FeedEvent;
+import ru.yandex.practicum.filmorate.storage.feed.FeedDbStorage;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@JdbcTest
+@ContextConfiguration(classes = {FeedDbStorage.class})
+class FeedDbStorageTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FeedDbStorage feedStorage;
+
+    private long userId;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM feed");
+        jdbcTemplate.update("DELETE FROM users");
+        jdbcTemplate.update("INSERT INTO users (email, login, name, birthday) VALUES ('u@mail.com', 'u', 'u', '1990-01-01')");
+        userId = jdbcTemplate.queryForObject("SELECT user_id FROM users WHERE login = 'u'", Long.class);
+    }
+
+    @Test
+    void shouldPageFeedByEventId() {
+        addEvent(300);
+        addEvent(200);
+        addEvent(200);
+        addEvent(100);
+        List<FeedEvent> all = feedStorage.getUserFeed(userId);
+
+        List<FeedEvent> first = feedStorage.getUserFeedPage(userId, 0, 2);
+        List<FeedEvent> second = feedStorage.getUserFeedPage(userId, first.getLast().getEventId(), 2);
+        List<FeedEvent> third = feedStorage.getUserFeedPage(userId, second.getLast().getEventId(), 2);
+
+        assertThat(all).extracting(FeedEvent::getTimestamp).containsExactly(300L, 200L, 200L, 100L);
+        assertThat(first).containsExactlyElementsOf(all.subList(0, 2));
+        assertThat(second).containsExactlyElementsOf(all.subList(2, 4));
+        assertThat(third).isEmpty();
+    }
+
+    @Test
+    void shouldUseCompositeIndexForFeedPages() {
+        jdbcTemplate.update("INSERT INTO users (email, login, name, birthday) " +
+                "SELECT 'u' || X || '@mail.com', 'u' || X, 'u', '1990-01-01' FROM SYSTEM_RANGE(1, 49)");
+        jdbcTemplate.update("INSERT INTO feed (user_id, entity_id, event_type, operation_type, time_stamp) " +
+                "SELECT u.user_id, X, 'LIKE', 'ADD', X FROM users u, SYSTEM_RANGE(1, 100)");
+        jdbcTemplate.execute("ANALYZE TABLE feed");
+        String plan = jdbcTemplate.queryForObject("EXPLAIN SELECT * FROM feed " +
+                "WHERE user_id = " + userId + " AND event_id > 0 ORDER BY event_id LIMIT 10", String.class);
+
+        assertThat(plan).containsIgnoringCase("IDX_FEED_USER_EVENT");
+    }
+
+    private void addEvent(long timestamp) {
+        feedStorage.addEvent(FeedEvent.builder()
+                .userId(userId)
+                .entityId(1)
+                .eventType("LIKE")
+                .operation("ADD")
+                .timestamp(timestamp)
+                .build());
+    }
+}
@@ -0,0 +1,154 @@
+package filmorate.storage;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.FeedEvent;
+import ru.yandex.practicum.filmorate.storage.feed.FeedBackpressure;
+import ru.yandex.practicum.filmorate.storage.feed.FeedStorage;
+import ru.yandex.practicum.filmorate.storage.feed.FeedWriteBehindSink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FeedWriteBehindSinkTest {
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RecordingFeedStorage storage = new RecordingFeedStorage();
+    private FeedWriteBehindSink sink;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        storage.release.countDown();
+        sink.shutdown();
+    }
+
+    @Test
+    void shouldWriteEventsInBatches() {
+        storage.release.countDown();
+        sink = new FeedWriteBehindSink(storage, meterRegistry, 100, 10, 20, FeedBackpressure.BLOCK, false);
+
+        for (int i = 1; i <= 25; i++) {
+            sink.onFeedEvent(event(i));
+        }
+        sink.flush();
+
+        assertThat(storage.written()).extracting(FeedEvent::getEntityId)
+                .containsExactlyElementsOf(range(1, 25));
+        assertThat(storage.batches).allSatisfy(batch -> assertThat(batch).hasSizeLessThanOrEqualTo(10));
+        assertThat(meterRegistry.get("filmorate.feed.batch.latency").timer().count())
+                .isEqualTo(storage.batches.size());
+        assertThat(meterRegistry.get("filmorate.feed.queue.size").gauge().value()).isZero();
+    }
+
+    @Test
+    void shouldDropEventsWhenQueueIsFull() throws InterruptedException {
+        sink = new FeedWriteBehindSink(storage, meterRegistry, 2, 1, 20, FeedBackpressure.DROP, false);
+        fillQueueBehindBlockedWriter();
+
+        sink.onFeedEvent(event(4));
+        storage.release.countDown();
+        sink.flush();
+
+        assertThat(storage.written()).extracting(FeedEvent::getEntityId).containsExactly(1L, 2L, 3L);
+        assertThat(meterRegistry.get("filmorate.feed.dropped").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldWriteInCallerThreadWhenQueueIsFull() throws InterruptedException {
+        sink = new FeedWriteBehindSink(storage, meterRegistry, 2, 1, 20, FeedBackpressure.CALLER_RUNS, false);
+        fillQueueBehindBlockedWriter();
+
+        sink.onFeedEvent(event(4));
+        storage.release.countDown();
+        sink.flush();
+
+        assertThat(storage.written()).extracting(FeedEvent::getEntityId).containsExactlyInAnyOrder(1L, 2L, 3L, 4L);
+        assertThat(storage.threads).contains(Thread.currentThread().getName());
+    }
+
+    @Test
+    void shouldFlushQueueOnShutdown() throws InterruptedException {
+        storage.release.countDown();
+        sink = new FeedWriteBehindSink(storage, meterRegistry, 100, 50, 10_000, FeedBackpressure.BLOCK, false);
+
+        for (int i = 1; i <= 5; i++) {
+            sink.onFeedEvent(event(i));
+        }
+        sink.shutdown();
+
+        assertThat(storage.written()).extracting(FeedEvent::getEntityId).containsExactlyElementsOf(range(1, 5));
+    }
+
+    // Первое событие забирает писатель и зависает в базе, следующие два заполняют очередь
+    private void fillQueueBehindBlockedWriter() throws InterruptedException {
+        sink.onFeedEvent(event(1));
+        assertThat(storage.entered.await(5, TimeUnit.SECONDS)).isTrue();
+        sink.onFeedEvent(event(2));
+        sink.onFeedEvent(event(3));
+    }
+
+    private static List<Long> range(long from, long to) {
+        List<Long> ids = new ArrayList<>();
+        for (long i = from; i <= to; i++) {
+            ids.add(i);
+        }
+        return ids;
+    }
+
+    private static FeedEvent event(long entityId) {
+        return FeedEvent.builder()
+                .userId(1)
+                .entityId(entityId)
+                .eventType("LIKE")
+                .operation("ADD")
+                .timestamp(entityId)
+                .build();
+    }
+
+    private static class RecordingFeedStorage implements FeedStorage {
+        private final List<List<FeedEvent>> batches = new CopyOnWriteArrayList<>();
+        private final List<String> threads = new CopyOnWriteArrayList<>();
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public List<FeedEvent> getUserFeed(long userId) {
+            return written();
+        }
+
+        @Override
+        public List<FeedEvent> getUserFeedPage(long userId, long afterEventId, int limit) {
+            return written();
+        }
+
+        @Override
+        public void addEvent(FeedEvent event) {
+            addEvents(List.of(event));
+        }
+
+        @Override
+        public void addEvents(List<FeedEvent> events) {
+            // Задерживаем только первую пачку, остальные пишутся сразу
+            if (entered.getCount() > 0) {
+                entered.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            threads.add(Thread.currentThread().getName());
+            batches.add(List.copyOf(events));
+        }
+
+        List<FeedEvent> written() {
+            return batches.stream().flatMap(List::stream).toList();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package filmorate.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.director.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmAutocompleteIndex;
+import ru.yandex.practicum.filmorate.storage.film.FilmCatalog;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@JdbcTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ContextConfiguration(classes = {FilmDbStorage.class, UserDbStorage.class, DirectorDbStorage.class,
+        FilmCatalog.class, FilmAutocompleteIndex.class})
+class FilmAutocompleteIndexTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FilmDbStorage filmStorage;
+
+    @Autowired
+    private UserDbStorage userStorage;
+
+    @Autowired
+    private DirectorDbStorage directorStorage;
+
+    @Autowired
+    private FilmCatalog catalog;
+
+    @Autowired
+    private FilmAutocompleteIndex index;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM film_genres");
+        jdbcTemplate.update("DELETE FROM film_directors");
+        jdbcTemplate.update("DELETE FROM likes");
+        jdbcTemplate.update("DELETE FROM films");
+        jdbcTemplate.update("DELETE FROM directors");
+        jdbcTemplate.update("DELETE FROM users");
+        catalog.rebuild();
+    }
+
+    @Test
+    void shouldSuggestByWordPrefixRankedByLikes() {
+        Director coppola = directorStorage.create(new Director(null, "Фрэнсис Форд Коппола"));
+        Film godfather = filmStorage.create(createTestFilm("Крестный отец", coppola));
+        Film crusade = filmStorage.create(createTestFilm("Крестовый поход"));
+        filmStorage.create(createTestFilm("Начало"));
+        like(crusade, 2);
+        like(godfather, 1);
+
+        assertThat(index.suggest("Крест", 10)).extracting(Suggestion::type, Suggestion::id)
+                .containsExactly(tuple(FilmAutocompleteIndex.FILM, (long) crusade.getId()),
+                        tuple(FilmAutocompleteIndex.FILM, (long) godfather.getId()));
+        assertThat(index.suggest("отец", 10)).extracting(Suggestion::id).containsExactly((long) godfather.getId());
+        assertThat(index.suggest("коп", 10)).extracting(Suggestion::type, Suggestion::name, Suggestion::likes)
+                .containsExactly(tuple(FilmAutocompleteIndex.DIRECTOR, "Фрэнсис Форд Коппола", 1));
+        assertThat(index.suggest("крест", 1)).extracting(Suggestion::id).containsExactly((long) crusade.getId());
+        assertThat(index.suggest("рес", 10)).isEmpty();
+    }
+
+    @Test
+    void shouldTolerateOneTypo() {
+        Film godfather = filmStorage.create(createTestFilm("Крестный отец"));
+        Film inception = filmStorage.create(createTestFilm("Начало"));
+
+        assertThat(index.suggest("крастный", 10)).extracting(Suggestion::id).containsExactly((long) godfather.getId());
+        assertThat(index.suggest("нчало", 10)).extracting(Suggestion::id).containsExactly((long) inception.getId());
+        assertThat(index.suggest("крсный", 10)).isEmpty();
+        // Короткие запросы ищутся только по точному префиксу
+        assertThat(index.suggest("кра", 10)).isEmpty();
+    }
+
+    @Test
+    void shouldFollowFilmAndDirectorChanges() {
+        Director director = directorStorage.create(new Director(null, "Кристофер Нолан"));
+        Film film = filmStorage.create(createTestFilm("Престиж", director));
+        Film removed = filmStorage.create(createTestFilm("Преследование"));
+
+        film.setName("Начало");
+        film.setLikes(null);
+        filmStorage.update(film);
+        filmStorage.deleteFilmById(removed.getId());
+        director.setName("Майкл Манн");
+        directorStorage.update(director);
+
+        assertThat(index.suggest("пре", 10)).isEmpty();
+        assertThat(index.suggest("нач", 10)).extracting(Suggestion::id).containsExactly((long) film.getId());
+        assertThat(index.suggest("нол", 10)).isEmpty();
+        assertThat(index.suggest("ман", 10)).extracting(Suggestion::name).containsExactly("Майкл Манн");
+
+        directorStorage.delete(director.getId());
+        assertThat(index.suggest("ман", 10)).isEmpty();
+    }
+
+    private void like(Film film, int count) {
+        for (int i = 0; i < count; i++) {
+            User user = userStorage.create(User.builder()
+                    .email("user" + film.getId() + "_" + i + "@mail.com")
+                    .login("user" + film.getId() + "_" + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build());
+            filmStorage.addLike(film.getId(), user.getId());
+        }
+    }
+
+    private Film createTestFilm(String name, Director... directors) {
+        return Film.builder()
+                .name(name)
+                .description("Description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(120)
+                .mpa(new MpaRating(1, null))
+                .directors(List.of(directors))
+                .build();
+    }
+}
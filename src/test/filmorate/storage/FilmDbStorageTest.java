@@ -1,6 +1,7 @@
 package filmorate.storage;
 
 
+import filmorate.support.QueryCounter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,6 +10,7 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ContextConfiguration;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LongSet;
 import ru.yandex.practicum.filmorate.model.MpaRating;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
@@ -17,12 +19,15 @@ import ru.yandex.practicum.filmorate.storage.mpa.MpaDbStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 @JdbcTest
-@ContextConfiguration(classes = {FilmDbStorage.class, UserDbStorage.class, MpaDbStorage.class, GenreDbStorage.class})
+@ContextConfiguration(classes = {FilmDbStorage.class, UserDbStorage.class, MpaDbStorage.class, GenreDbStorage.class,
+        QueryCounter.class})
 class FilmDbStorageTest {
 
     @Autowired
@@ -40,6 +45,9 @@ class FilmDbStorageTest {
     @Autowired
     private GenreDbStorage genreStorage;
 
+    @Autowired
+    private QueryCounter queryCounter;
+
     @BeforeEach
     void setUp() {
         jdbcTemplate.update("DELETE FROM film_genres");
@@ -119,6 +127,216 @@ class FilmDbStorageTest {
         assertThat(filmWithoutLike.getLikes()).doesNotContain(createdUser.getId());
     }
 
+    @Test
+    void shouldHydrateFilmListWithFixedNumberOfQueries() {
+        User user = userStorage.create(User.builder()
+                .email("user@mail.com")
+                .login("testLogin")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build());
+
+        for (int i = 0; i < 20; i++) {
+            Film film = filmStorage.create(createTestFilm());
+            filmStorage.addLike(film.getId(), user.getId());
+        }
+
+        queryCounter.reset();
+        Collection<Film> films = filmStorage.getAllFilms();
+        assertThat(queryCounter.count()).isEqualTo(4);
+
+        assertThat(films).hasSize(20)
+                .allSatisfy(film -> {
+                    assertThat(film.getLikes()).containsExactly(user.getId());
+                    assertThat(film.getGenres()).extracting(Genre::getId).containsExactly(1, 2);
+                });
+
+        queryCounter.reset();
+        filmStorage.getPopularFilms(10);
+        assertThat(queryCounter.count()).isEqualTo(4);
+    }
+
+    @Test
+    void shouldKeepLikesCountInStepAndReconcileDrift() {
+        User user = userStorage.create(User.builder()
+                .email("user@mail.com")
+                .login("testLogin")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build());
+        Film film = filmStorage.create(createTestFilm());
+
+        assertThat(filmStorage.addLike(film.getId(), user.getId())).isPresent();
+        assertThat(filmStorage.addLike(film.getId(), user.getId())).isEmpty();
+        assertThat(likesCount(film.getId())).isEqualTo(1);
+
+        assertThat(filmStorage.removeLike(film.getId(), user.getId())).isPresent();
+        assertThat(filmStorage.removeLike(film.getId(), user.getId())).isEmpty();
+        assertThat(likesCount(film.getId())).isZero();
+
+        jdbcTemplate.update("UPDATE films SET likes_count = 42 WHERE film_id = ?", film.getId());
+        assertThat(filmStorage.reconcileLikesCount()).isEqualTo(1);
+        assertThat(likesCount(film.getId())).isZero();
+        assertThat(filmStorage.reconcileLikesCount()).isZero();
+    }
+
+    @Test
+    void shouldRankPopularFilmsByLikesCountIndex() {
+        String plan = jdbcTemplate.queryForObject(
+                "EXPLAIN SELECT f.* FROM films f ORDER BY f.likes_count DESC, f.film_id LIMIT 10", String.class);
+
+        assertThat(plan).containsIgnoringCase("IDX_FILMS_LIKES_COUNT");
+    }
+
+    @Test
+    void shouldFilterPopularFilmsByIndexedReleaseYear() {
+        jdbcTemplate.update("INSERT INTO films (name, description, release_date, duration, rating_id, likes_count) " +
+                "SELECT 'Film ' || X, 'Description', DATEADD(YEAR, MOD(X, 40), DATE '1980-06-15'), 120, 1, MOD(X, 7) " +
+                "FROM SYSTEM_RANGE(1, 400)");
+        jdbcTemplate.execute("ANALYZE TABLE films");
+        String plan = jdbcTemplate.queryForObject("EXPLAIN SELECT f.* FROM films f WHERE f.release_year = 2001 " +
+                "ORDER BY f.likes_count DESC, f.film_id LIMIT 10", String.class);
+        assertThat(plan).containsIgnoringCase("IDX_FILMS_YEAR_LIKES");
+
+        List<Film> films = filmStorage.getPopularFilms(5, null, 2001);
+        assertThat(films).hasSize(5)
+                .allSatisfy(film -> assertThat(film.getReleaseDate().getYear()).isEqualTo(2001));
+        assertThat(films).extracting(Film::getName)
+                .containsExactly("Film 181", "Film 61", "Film 341", "Film 221", "Film 101");
+    }
+
+    @Test
+    void shouldRankMultiGenreFilmsOncePerGenre() {
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            userIds.add(userStorage.create(User.builder()
+                    .email("user" + i + "@mail.com")
+                    .login("user" + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build()).getId());
+        }
+        Film multiGenre = createTestFilm();
+        multiGenre.setGenres(List.of(new Genre(1, null), new Genre(2, null), new Genre(3, null)));
+        multiGenre = filmStorage.create(multiGenre);
+        Film comedy = createTestFilm();
+        comedy.setGenres(List.of(new Genre(1, null)));
+        comedy = filmStorage.create(comedy);
+        filmStorage.addLike(multiGenre.getId(), userIds.get(0));
+        filmStorage.addLike(comedy.getId(), userIds.get(1));
+        filmStorage.addLike(comedy.getId(), userIds.get(2));
+
+        // Три жанра не умножают один лайк фильма
+        assertThat(filmStorage.getPopularFilms(10, 1, null)).extracting(Film::getId)
+                .containsExactly(comedy.getId(), multiGenre.getId());
+        assertThat(filmStorage.getPopularFilms(10, 2, null)).extracting(Film::getId)
+                .containsExactly(multiGenre.getId());
+        assertThat(jdbcTemplate.queryForList("SELECT likes_count FROM genre_popularity WHERE film_id = ?",
+                Integer.class, multiGenre.getId())).containsExactly(1, 1, 1);
+
+        filmStorage.addLike(multiGenre.getId(), userIds.get(1));
+        filmStorage.addLike(multiGenre.getId(), userIds.get(2));
+        assertThat(filmStorage.getPopularFilms(10, 1, 2000)).extracting(Film::getId)
+                .containsExactly(multiGenre.getId(), comedy.getId());
+
+        multiGenre.setGenres(List.of(new Genre(2, null)));
+        multiGenre.setReleaseDate(LocalDate.of(2010, 1, 1));
+        multiGenre.setLikes(null);
+        filmStorage.update(multiGenre);
+        assertThat(filmStorage.getPopularFilms(10, 1, null)).extracting(Film::getId)
+                .containsExactly(comedy.getId());
+        assertThat(filmStorage.getPopularFilms(10, 2, 2010)).extracting(Film::getId)
+                .containsExactly(multiGenre.getId());
+        assertThat(filmStorage.getPopularFilms(10, 2, 2000)).isEmpty();
+
+        jdbcTemplate.update("UPDATE genre_popularity SET likes_count = 0");
+        filmStorage.reconcileLikesCount();
+        assertThat(jdbcTemplate.queryForObject("SELECT likes_count FROM genre_popularity WHERE film_id = ?",
+                Integer.class, multiGenre.getId())).isEqualTo(3);
+    }
+
+    @Test
+    void shouldReadGenreFilteredPopularityFromRollupIndex() {
+        String plan = jdbcTemplate.queryForObject("EXPLAIN SELECT gp.film_id FROM genre_popularity gp " +
+                "WHERE gp.genre_id = 1 AND gp.release_year = 2000 " +
+                "ORDER BY gp.likes_count DESC, gp.film_id LIMIT 10", String.class);
+
+        assertThat(plan).containsIgnoringCase("IDX_GENRE_POPULARITY_YEAR_RANK");
+    }
+
+    @Test
+    void shouldStreamAndPageFilmsInIdOrder() {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(filmStorage.create(createTestFilm()).getId());
+        }
+
+        List<Film> streamed = new ArrayList<>();
+        filmStorage.streamAllFilms(streamed::add);
+        assertThat(streamed).extracting(Film::getId).containsExactlyElementsOf(ids);
+        assertThat(streamed).allSatisfy(film -> assertThat(film.getGenres()).hasSize(2));
+
+        List<Film> firstPage = filmStorage.getFilmsPage(0, 2);
+        List<Film> secondPage = filmStorage.getFilmsPage(firstPage.get(1).getId(), 2);
+        assertThat(firstPage).extracting(Film::getId).containsExactly(ids.get(0), ids.get(1));
+        assertThat(secondPage).extracting(Film::getId).containsExactly(ids.get(2), ids.get(3));
+    }
+
+    @Test
+    void shouldUpdateFilmWithoutRewritingLikesOrUnchangedLinks() {
+        Film film = filmStorage.create(createTestFilm());
+        jdbcTemplate.update("INSERT INTO users (email, login, name, birthday) " +
+                "SELECT 'u' || X || '@mail.com', 'u' || X, 'u', '1990-01-01' FROM SYSTEM_RANGE(1, 300)");
+        jdbcTemplate.update("INSERT INTO likes (film_id, user_id) SELECT ?, user_id FROM users", film.getId());
+        filmStorage.reconcileLikesCount();
+        List<Long> likeRows = rowIds("likes", film.getId());
+        List<Long> genreRows = rowIds("film_genres", film.getId());
+
+        film.setDescription("Updated");
+        film.setLikes(null);
+        film.setGenres(List.of(new Genre(2, null), new Genre(3, null)));
+        Film updated = filmStorage.update(film);
+
+        // Строки, которые не менялись, остаются на месте: лайки не переписываются, жанр 2 не пересоздается
+        assertThat(rowIds("likes", film.getId())).isEqualTo(likeRows);
+        assertThat(rowIds("film_genres", film.getId())).contains(genreRows.get(1)).doesNotContain(genreRows.get(0));
+        assertThat(updated.getLikes()).hasSize(300);
+        assertThat(updated.getGenres()).extracting(Genre::getId).containsExactly(2, 3);
+        assertThat(likesCount(film.getId())).isEqualTo(300);
+    }
+
+    @Test
+    void shouldReplaceLikesByDifference() {
+        Film film = filmStorage.create(createTestFilm());
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            userIds.add(userStorage.create(User.builder()
+                    .email("user" + i + "@mail.com")
+                    .login("user" + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build()).getId());
+        }
+        filmStorage.addLike(film.getId(), userIds.get(0));
+        filmStorage.addLike(film.getId(), userIds.get(1));
+        List<Long> keptRow = jdbcTemplate.queryForList("SELECT _ROWID_ FROM likes WHERE film_id = ? AND user_id = ?",
+                Long.class, film.getId(), userIds.get(1));
+
+        filmStorage.replaceLikes(film.getId(), LongSet.of(userIds.get(1), userIds.get(2)));
+
+        assertThat(filmStorage.getFilmById(film.getId()).getLikes()).containsExactly(userIds.get(1), userIds.get(2));
+        assertThat(jdbcTemplate.queryForList("SELECT _ROWID_ FROM likes WHERE film_id = ? AND user_id = ?",
+                Long.class, film.getId(), userIds.get(1))).isEqualTo(keptRow);
+        assertThat(likesCount(film.getId())).isEqualTo(2);
+    }
+
+    private List<Long> rowIds(String table, int filmId) {
+        return jdbcTemplate.queryForList("SELECT _ROWID_ FROM " + table + " WHERE film_id = ?", Long.class, filmId)
+                .stream()
+                .sorted()
+                .toList();
+    }
+
+    private int likesCount(int filmId) {
+        return jdbcTemplate.queryForObject("SELECT likes_count FROM films WHERE film_id = ?", Integer.class, filmId);
+    }
+
     private Film createTestFilm() {
         return Film.builder()
                 .name("Test Film")
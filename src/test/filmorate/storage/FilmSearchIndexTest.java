@@ -0,0 +1,146 @@
+package filmorate.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.director.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmCatalog;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@JdbcTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ContextConfiguration(classes = {FilmDbStorage.class, UserDbStorage.class, DirectorDbStorage.class,
+        FilmCatalog.class, FilmSearchIndex.class})
+class FilmSearchIndexTest {
+    private static final List<String> QUERIES = List.of(
+            "кре", "КРЕСТ", "отец", "о", "ол", "нол", "тарантино", "ан", "фильм", "крестный отец", "zzz");
+    // Эталонный поиск подстрокой прямо в базе
+    private static final String SEARCH_SQL = "SELECT DISTINCT f.film_id, f.likes_count FROM films f " +
+            "LEFT JOIN film_directors fd ON f.film_id = fd.film_id " +
+            "LEFT JOIN directors d ON fd.director_id = d.director_id " +
+            "WHERE (? AND LOWER(f.name) LIKE ?) OR (? AND LOWER(d.name) LIKE ?) " +
+            "ORDER BY f.likes_count DESC, f.film_id";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FilmDbStorage filmStorage;
+
+    @Autowired
+    private UserDbStorage userStorage;
+
+    @Autowired
+    private DirectorDbStorage directorStorage;
+
+    @Autowired
+    private FilmCatalog catalog;
+
+    @Autowired
+    private FilmSearchIndex searchIndex;
+
+    private Director nolan;
+    private Director tarantino;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM film_genres");
+        jdbcTemplate.update("DELETE FROM film_directors");
+        jdbcTemplate.update("DELETE FROM likes");
+        jdbcTemplate.update("DELETE FROM films");
+        jdbcTemplate.update("DELETE FROM directors");
+        jdbcTemplate.update("DELETE FROM users");
+        nolan = directorStorage.create(new Director(null, "Кристофер Нолан"));
+        tarantino = directorStorage.create(new Director(null, "Квентин Тарантино"));
+        catalog.rebuild();
+    }
+
+    @Test
+    void shouldRankLikeSqlSearch() {
+        Film godfather = filmStorage.create(createTestFilm("Крестный отец", tarantino));
+        Film inception = filmStorage.create(createTestFilm("Начало", nolan));
+        Film crusade = filmStorage.create(createTestFilm("Крестовый поход"));
+        filmStorage.create(createTestFilm("Отец невесты", nolan, tarantino));
+        like(inception, 2);
+        like(crusade, 1);
+
+        assertThat(searchIndex.search("крест", true, false))
+                .containsExactly(crusade.getId(), godfather.getId());
+        assertThat(searchIndex.search("нолан", false, true)).hasSize(2).startsWith(inception.getId());
+        assertMatchesSql();
+    }
+
+    @Test
+    void shouldFollowFilmAndDirectorChanges() {
+        Film godfather = filmStorage.create(createTestFilm("Крестный отец", tarantino));
+        Film heat = filmStorage.create(createTestFilm("Схватка", nolan));
+        Film removed = filmStorage.create(createTestFilm("Крестоносцы", nolan));
+        like(heat, 1);
+
+        godfather.setName("Однажды в Голливуде");
+        godfather.setDirectors(List.of(nolan));
+        godfather.setLikes(null);
+        filmStorage.update(godfather);
+        filmStorage.deleteFilmById(removed.getId());
+        nolan.setName("Майкл Манн");
+        directorStorage.update(nolan);
+
+        assertThat(searchIndex.search("крест", true, true)).isEmpty();
+        assertThat(searchIndex.search("манн", false, true)).containsExactly(heat.getId(), godfather.getId());
+        assertMatchesSql();
+
+        directorStorage.delete(nolan.getId());
+        assertThat(searchIndex.search("манн", false, true)).isEmpty();
+        assertMatchesSql();
+    }
+
+    private void assertMatchesSql() {
+        for (String query : QUERIES) {
+            for (boolean[] by : new boolean[][]{{true, false}, {false, true}, {true, true}}) {
+                List<Integer> expected = jdbcTemplate.query(SEARCH_SQL, (rs, rowNum) -> rs.getInt("film_id"),
+                        by[0], "%" + query.toLowerCase() + "%", by[1], "%" + query.toLowerCase() + "%");
+                assertThat(searchIndex.search(query, by[0], by[1]))
+                        .as("запрос '%s', по названию %s, по режиссеру %s", query, by[0], by[1])
+                        .containsExactlyElementsOf(expected);
+            }
+        }
+    }
+
+    private void like(Film film, int count) {
+        for (int i = 0; i < count; i++) {
+            User user = userStorage.create(User.builder()
+                    .email("user" + film.getId() + "_" + i + "@mail.com")
+                    .login("user" + film.getId() + "_" + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build());
+            filmStorage.addLike(film.getId(), user.getId());
+        }
+    }
+
+    private Film createTestFilm(String name, Director... directors) {
+        return Film.builder()
+                .name(name)
+                .description("Description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(120)
+                .mpa(new MpaRating(1, null))
+                .directors(List.of(directors))
+                .build();
+    }
+}
@@ -0,0 +1,154 @@
+package filmorate.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.event.LikeChangedEvent;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.PopularityLeaderboard;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@JdbcTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ContextConfiguration(classes = {FilmDbStorage.class, UserDbStorage.class, PopularityLeaderboard.class})
+class PopularityLeaderboardTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FilmDbStorage filmStorage;
+
+    @Autowired
+    private UserDbStorage userStorage;
+
+    @Autowired
+    private PopularityLeaderboard leaderboard;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM film_genres");
+        jdbcTemplate.update("DELETE FROM likes");
+        jdbcTemplate.update("DELETE FROM films");
+        jdbcTemplate.update("DELETE FROM users");
+        leaderboard.rebuild();
+    }
+
+    @Test
+    void shouldMatchStrictRankingAfterConcurrentLikes() throws Exception {
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            films.add(filmStorage.create(createTestFilm(2000 + i % 3, i % 4 + 1)));
+        }
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            users.add(userStorage.create(createTestUser(i)));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(users.size());
+        List<Future<?>> tasks = new ArrayList<>();
+        for (User user : users) {
+            tasks.add(executor.submit(() -> {
+                Random random = new Random(user.getId());
+                for (int i = 0; i < 40; i++) {
+                    Film film = films.get(random.nextInt(films.size()));
+                    if (random.nextInt(3) == 0) {
+                        filmStorage.removeLike(film.getId(), user.getId());
+                    } else {
+                        filmStorage.addLike(film.getId(), user.getId());
+                    }
+                }
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        executor.shutdown();
+
+        assertThat(leaderboard.top(10, null, null))
+                .containsExactlyElementsOf(ids(filmStorage.getPopularFilms(10, null, null)));
+        assertThat(leaderboard.top(5, 2, null))
+                .containsExactlyElementsOf(ids(filmStorage.getPopularFilms(5, 2, null)));
+        assertThat(leaderboard.top(5, null, 2001))
+                .containsExactlyElementsOf(ids(filmStorage.getPopularFilms(5, null, 2001)));
+        assertThat(leaderboard.top(5, 3, 2002))
+                .containsExactlyElementsOf(ids(filmStorage.getPopularFilms(5, 3, 2002)));
+    }
+
+    @Test
+    void shouldDropDeletedFilmsAndFollowUpdatedGenres() {
+        User user = userStorage.create(createTestUser(1));
+        Film first = filmStorage.create(createTestFilm(2000, 1));
+        Film second = filmStorage.create(createTestFilm(2000, 1));
+        filmStorage.addLike(second.getId(), user.getId());
+
+        assertThat(leaderboard.top(10, 1, 2000)).containsExactly(second.getId(), first.getId());
+
+        second.setGenres(List.of(new Genre(2, null)));
+        second.setLikes(null);
+        filmStorage.update(second);
+        assertThat(leaderboard.top(10, 1, 2000)).containsExactly(first.getId());
+        assertThat(leaderboard.top(10, 2, null)).containsExactly(second.getId());
+
+        filmStorage.deleteFilmById(first.getId());
+        assertThat(leaderboard.top(10, null, null)).containsExactly(second.getId());
+    }
+
+    @Test
+    void shouldNotCountLikeTwiceWhenItsEventArrivesAfterRebuild() {
+        User first = userStorage.create(createTestUser(1));
+        User second = userStorage.create(createTestUser(2));
+        Film older = filmStorage.create(createTestFilm(2000, 1));
+        Film newer = filmStorage.create(createTestFilm(2000, 1));
+        filmStorage.addLike(older.getId(), first.getId());
+
+        // Лайк закоммичен до чтения снимка, а его событие доставлено уже после перестройки
+        jdbcTemplate.update("INSERT INTO likes (film_id, user_id) VALUES (?, ?)", newer.getId(), second.getId());
+        leaderboard.rebuild();
+        leaderboard.onLikeChanged(new LikeChangedEvent(newer.getId(), second.getId(), true));
+
+        assertThat(leaderboard.top(10, null, null)).containsExactly(older.getId(), newer.getId());
+    }
+
+    private List<Integer> ids(List<Film> films) {
+        return films.stream().map(Film::getId).toList();
+    }
+
+    private Film createTestFilm(int year, int genreId) {
+        return Film.builder()
+                .name("Film")
+                .description("Description")
+                .releaseDate(LocalDate.of(year, 1, 1))
+                .duration(120)
+                .mpa(new MpaRating(1, null))
+                .genres(List.of(new Genre(genreId, null)))
+                .build();
+    }
+
+    private User createTestUser(int index) {
+        return User.builder()
+                .email("user" + index + "@mail.com")
+                .login("user" + index)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build();
+    }
+}
@@ -0,0 +1,182 @@
+package filmorate.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.model.Recommendation;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.RecommendationEngine;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+@JdbcTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ContextConfiguration(classes = {FilmDbStorage.class, UserDbStorage.class, RecommendationEngine.class})
+class RecommendationEngineTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FilmDbStorage filmStorage;
+
+    @Autowired
+    private UserDbStorage userStorage;
+
+    @Autowired
+    private RecommendationEngine engine;
+
+    private final List<Integer> films = new ArrayList<>();
+    private final List<Long> users = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM film_genres");
+        jdbcTemplate.update("DELETE FROM likes");
+        jdbcTemplate.update("DELETE FROM films");
+        jdbcTemplate.update("DELETE FROM users");
+        engine.rebuild();
+        films.clear();
+        users.clear();
+        for (int i = 0; i < 4; i++) {
+            films.add(filmStorage.create(createTestFilm()).getId());
+            users.add(userStorage.create(createTestUser(i)).getId());
+        }
+    }
+
+    @Test
+    void shouldRankFilmsBySimilarityToLikedOnes() {
+        like(0, 0, 1);
+        like(1, 0, 1, 2);
+        like(2, 1, 3);
+        like(3, 3);
+        engine.refresh();
+
+        List<Recommendation> recommendations = engine.recommend(users.get(0), 10);
+
+        // Фильм 2: Жаккар 1/2 с фильмом 0 и 1/3 с фильмом 1; фильм 3: 1/4 с фильмом 1
+        assertThat(recommendations).extracting(Recommendation::filmId)
+                .containsExactly(films.get(2), films.get(3));
+        assertThat(recommendations.get(0).score()).isCloseTo(1.0 / 2 + 1.0 / 3, within(1e-9));
+        assertThat(recommendations.get(1).score()).isCloseTo(1.0 / 4, within(1e-9));
+        assertThat(engine.recommend(users.get(0), 1)).extracting(Recommendation::filmId)
+                .containsExactly(films.get(2));
+    }
+
+    @Test
+    void shouldServePublishedNeighboursUntilRefresh() {
+        like(0, 0);
+        like(1, 0, 1);
+        assertThat(engine.recommend(users.get(0), 10)).isEmpty();
+
+        engine.refresh();
+        assertThat(engine.recommend(users.get(0), 10)).extracting(Recommendation::filmId)
+                .containsExactly(films.get(1));
+    }
+
+    @Test
+    void shouldFollowLikesAndDeletionsIncrementally() {
+        like(0, 0);
+        like(1, 0, 1);
+        engine.refresh();
+        assertThat(engine.recommend(users.get(0), 10)).extracting(Recommendation::filmId)
+                .containsExactly(films.get(1));
+
+        filmStorage.removeLike(films.get(1), users.get(1));
+        engine.refresh();
+        assertThat(engine.recommend(users.get(0), 10)).isEmpty();
+
+        like(2, 0, 2, 3);
+        filmStorage.deleteFilmById(films.get(2));
+        engine.refresh();
+        assertThat(engine.recommend(users.get(0), 10)).extracting(Recommendation::filmId)
+                .containsExactly(films.get(3));
+
+        userStorage.delete(users.get(2));
+        engine.refresh();
+        assertThat(engine.recommend(users.get(0), 10)).isEmpty();
+    }
+
+    @Test
+    void shouldMatchFullRebuildAfterIncrementalUpdates() {
+        like(0, 0, 1);
+        like(1, 0, 1, 2);
+        like(2, 2, 3);
+        filmStorage.removeLike(films.get(1), users.get(0));
+        engine.refresh();
+        List<Recommendation> incremental = engine.recommend(users.get(0), 10);
+
+        engine.rebuild();
+        assertThat(engine.recommend(users.get(0), 10)).isEqualTo(incremental);
+    }
+
+    @Test
+    void shouldBuildSameIndexOnAnyNumberOfThreads() {
+        for (int i = 4; i < 30; i++) {
+            films.add(filmStorage.create(createTestFilm()).getId());
+        }
+        for (int i = 4; i < 20; i++) {
+            users.add(userStorage.create(createTestUser(i)).getId());
+        }
+        Random random = new Random(42);
+        for (long userId : users) {
+            for (int i = 0; i < 12; i++) {
+                filmStorage.addLike(films.get(random.nextInt(films.size())), userId);
+            }
+        }
+
+        RecommendationEngine sequential = new RecommendationEngine(jdbcTemplate, 5, 1, 500);
+        RecommendationEngine parallel = new RecommendationEngine(jdbcTemplate, 5, 4, 500);
+        try {
+            sequential.rebuild();
+            parallel.rebuild();
+            for (long userId : users) {
+                List<Recommendation> expected = sequential.recommend(userId, 10);
+                assertThat(expected).isNotEmpty();
+                assertThat(parallel.recommend(userId, 10)).isEqualTo(expected);
+            }
+        } finally {
+            sequential.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    private void like(int user, int... filmIndexes) {
+        for (int film : filmIndexes) {
+            filmStorage.addLike(films.get(film), users.get(user));
+        }
+    }
+
+    private Film createTestFilm() {
+        return Film.builder()
+                .name("Film")
+                .description("Description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(120)
+                .mpa(new MpaRating(1, null))
+                .build();
+    }
+
+    private User createTestUser(int index) {
+        return User.builder()
+                .email("user" + index + "@mail.com")
+                .login("user" + index)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build();
+    }
+}
@@ -0,0 +1,112 @@
+package filmorate.storage;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import filmorate.support.QueryCounter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.ContextConfiguration;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.director.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaDbStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@JdbcTest
+@ContextConfiguration(classes = {GenreDbStorage.class, MpaDbStorage.class, DirectorDbStorage.class,
+        QueryCounter.class, ReferenceDataCacheTest.CacheConfig.class})
+class ReferenceDataCacheTest {
+
+    @Autowired
+    private GenreStorage genreStorage;
+
+    @Autowired
+    private MpaStorage mpaStorage;
+
+    @Autowired
+    private DirectorStorage directorStorage;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private QueryCounter queryCounter;
+
+    @BeforeEach
+    void setUp() {
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+    }
+
+    @Test
+    void shouldServeGenresAndRatingsFromCache() {
+        genreStorage.getById(1);
+        genreStorage.getAll();
+        mpaStorage.getMpaById(1);
+        mpaStorage.getAllRatings();
+
+        queryCounter.reset();
+        assertThat(genreStorage.getById(1).getName()).isEqualTo("Комедия");
+        assertThat(genreStorage.getAll()).hasSize(6);
+        assertThat(mpaStorage.getMpaById(1).getId()).isEqualTo(1);
+        assertThat(mpaStorage.getAllRatings()).hasSize(5);
+        assertThat(queryCounter.count()).isZero();
+    }
+
+    @Test
+    void shouldLoadGenreSetInOneQuery() {
+        queryCounter.reset();
+        List<Genre> genres = genreStorage.getByIds(List.of(3, 1, 2));
+        assertThat(queryCounter.count()).isEqualTo(1);
+        assertThat(genres).extracting(Genre::getId).containsExactly(1, 2, 3);
+
+        queryCounter.reset();
+        assertThat(genreStorage.getByIds(List.of(1, 2, 3))).isEqualTo(genres);
+        assertThat(genreStorage.getByIds(List.of(1, 99))).extracting(Genre::getId).containsExactly(1);
+        assertThat(queryCounter.count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldEvictDirectorOnUpdateAndDelete() {
+        Director director = new Director();
+        director.setName("Кристофер Нолан");
+        long id = directorStorage.create(director).getId();
+        assertThat(directorStorage.getAllDirectors()).extracting(Director::getName).contains("Кристофер Нолан");
+        directorStorage.getDirectorById(id);
+
+        director.setName("Мартин Скорсезе");
+        directorStorage.update(director);
+        assertThat(directorStorage.getDirectorById(id).getName()).isEqualTo("Мартин Скорсезе");
+        assertThat(directorStorage.getAllDirectors()).extracting(Director::getName).contains("Мартин Скорсезе");
+
+        directorStorage.delete(id);
+        assertThatThrownBy(() -> directorStorage.getDirectorById(id)).isInstanceOf(NotFoundException.class);
+        assertThat(directorStorage.getAllDirectors()).extracting(Director::getId).doesNotContain(id);
+    }
+
+    @TestConfiguration
+    @EnableCaching
+    static class CacheConfig {
+        @Bean
+        CacheManager cacheManager() {
+            CaffeineCacheManager cacheManager = new CaffeineCacheManager(
+                    "genres", "genre", "genreSets", "mpaRatings", "mpa", "directors", "director");
+            cacheManager.setCaffeine(Caffeine.newBuilder().recordStats());
+            return cacheManager;
+        }
+    }
+}
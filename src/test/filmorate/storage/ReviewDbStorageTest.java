@@ -0,0 +1,227 @@
+package filmorate.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.review.ReviewDbStorage;
+import ru.yandex.practicum.filmorate.storage.review.ReviewTopCache;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+@JdbcTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ContextConfiguration(classes = {FilmDbStorage.class, UserDbStorage.class, ReviewDbStorage.class, ReviewTopCache.class})
+class ReviewDbStorageTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FilmDbStorage filmStorage;
+
+    @Autowired
+    private UserDbStorage userStorage;
+
+    @Autowired
+    private ReviewDbStorage reviewStorage;
+
+    private final List<Integer> users = new ArrayList<>();
+    private int filmId;
+    private int reviewId;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM review_likes");
+        jdbcTemplate.update("DELETE FROM reviews");
+        jdbcTemplate.update("DELETE FROM film_genres");
+        jdbcTemplate.update("DELETE FROM likes");
+        jdbcTemplate.update("DELETE FROM friendships");
+        jdbcTemplate.update("DELETE FROM films");
+        jdbcTemplate.update("DELETE FROM users");
+        users.clear();
+        for (int i = 0; i < 20; i++) {
+            users.add(Math.toIntExact(userStorage.create(createTestUser(i)).getId()));
+        }
+        filmId = filmStorage.create(createTestFilm()).getId();
+        reviewId = createReview(users.getFirst(), filmId);
+    }
+
+    @Test
+    void shouldApplyVoteDifferenceWhenSwitching() {
+        int userId = users.get(1);
+
+        assertThat(reviewStorage.addLike(reviewId, userId).getUseful()).isEqualTo(1);
+        assertThat(reviewStorage.addLike(reviewId, userId).getUseful()).isEqualTo(1);
+        assertThat(reviewStorage.addDislike(reviewId, userId).getUseful()).isEqualTo(-1);
+        assertThat(reviewStorage.removeLike(reviewId, userId).getUseful()).isEqualTo(-1);
+        assertThat(reviewStorage.removeDislike(reviewId, userId).getUseful()).isEqualTo(0);
+        assertThatThrownBy(() -> reviewStorage.addLike(-1, userId)).isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void shouldKeepUsefulEqualToVotesUnderConcurrentVoting() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 200; i++) {
+                        int userId = users.get(random.nextInt(users.size()));
+                        switch (random.nextInt(4)) {
+                            case 0 -> reviewStorage.addLike(reviewId, userId);
+                            case 1 -> reviewStorage.addDislike(reviewId, userId);
+                            case 2 -> reviewStorage.removeLike(reviewId, userId);
+                            default -> reviewStorage.removeDislike(reviewId, userId);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Integer votes = jdbcTemplate.queryForObject("SELECT COALESCE(SUM(CASE WHEN is_positive THEN 1 ELSE -1 END), 0) " +
+                "FROM review_likes WHERE review_id = ?", Integer.class, reviewId);
+        assertThat(reviewStorage.getReviewById(reviewId).getUseful()).isEqualTo(votes);
+        assertThat(reviewStorage.reconcileUseful()).isZero();
+    }
+
+    @Test
+    void shouldReconcileDriftedUseful() {
+        reviewStorage.addLike(reviewId, users.get(1));
+        reviewStorage.addLike(reviewId, users.get(2));
+        jdbcTemplate.update("UPDATE reviews SET useful = 10 WHERE review_id = ?", reviewId);
+
+        assertThat(reviewStorage.reconcileUseful()).isEqualTo(1);
+        assertThat(reviewStorage.getReviewById(reviewId).getUseful()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldWalkReviewsByKeysetPages() {
+        int otherFilmId = filmStorage.create(createTestFilm()).getId();
+        for (int i = 1; i < users.size(); i++) {
+            int id = createReview(users.get(i), i % 3 == 0 ? otherFilmId : filmId);
+            for (int v = 0; v < i % 4; v++) {
+                reviewStorage.addLike(id, users.get(v));
+            }
+        }
+        List<Review> expected = jdbcTemplate.query("SELECT * FROM reviews WHERE film_id = ? " +
+                        "ORDER BY useful DESC, review_id",
+                (rs, rowNum) -> reviewStorage.getReviewById(rs.getInt("review_id")), filmId);
+
+        List<Review> walked = new ArrayList<>();
+        List<Review> page = reviewStorage.getReviews(filmId, 4, null, null);
+        while (!page.isEmpty()) {
+            walked.addAll(page);
+            Review last = page.getLast();
+            page = reviewStorage.getReviews(filmId, 4, last.getUseful(), last.getReviewId());
+        }
+
+        assertThat(walked).containsExactlyElementsOf(expected);
+        assertThat(reviewStorage.getReviews(null, 1000, null, null)).hasSize(users.size());
+    }
+
+    @Test
+    void shouldPageFilmReviewsByCompositeIndex() {
+        for (int i = 0; i < 10; i++) {
+            filmStorage.create(createTestFilm());
+        }
+        jdbcTemplate.update("INSERT INTO reviews (user_id, film_id, useful, is_positive, content) " +
+                "SELECT ?, (SELECT MIN(film_id) FROM films) + MOD(X, 10), MOD(X, 17), TRUE, 'Review' " +
+                "FROM SYSTEM_RANGE(1, 400)", users.getFirst());
+        jdbcTemplate.execute("ANALYZE TABLE reviews");
+
+        String filmPlan = jdbcTemplate.queryForObject("EXPLAIN SELECT * FROM reviews " +
+                "USE INDEX (idx_reviews_film_useful) WHERE film_id = ? " +
+                "AND (useful < 5 OR useful = 5 AND review_id > 100) " +
+                "ORDER BY film_id, useful DESC, review_id LIMIT 10", String.class, filmId);
+        String allPlan = jdbcTemplate.queryForObject("EXPLAIN SELECT * FROM reviews " +
+                "WHERE TRUE AND (useful < 5 OR useful = 5 AND review_id > 100) " +
+                "ORDER BY useful DESC, review_id LIMIT 10", String.class);
+
+        assertThat(filmPlan).containsIgnoringCase("IDX_REVIEWS_FILM_USEFUL").contains("index sorted");
+        assertThat(allPlan).containsIgnoringCase("IDX_REVIEWS_USEFUL").contains("index sorted");
+    }
+
+    @Test
+    void shouldRefreshCachedFirstPageOnVotes() {
+        int secondId = createReview(users.get(1), filmId);
+        assertThat(reviewStorage.getReviews(filmId, 10, null, null))
+                .extracting(Review::getReviewId).containsExactly(reviewId, secondId);
+
+        reviewStorage.addLike(secondId, users.get(2));
+        assertThat(reviewStorage.getReviews(filmId, 10, null, null))
+                .extracting(Review::getReviewId).containsExactly(secondId, reviewId);
+        assertThat(reviewStorage.getReviews(null, 1, null, null))
+                .extracting(Review::getReviewId).containsExactly(secondId);
+
+        reviewStorage.deleteReviewById(secondId);
+        assertThat(reviewStorage.getReviews(filmId, 10, null, null))
+                .extracting(Review::getReviewId).containsExactly(reviewId);
+    }
+
+    @Test
+    void shouldNotExposeCachedReviewsToCallers() {
+        Review first = reviewStorage.getReviews(filmId, 10, null, null).getFirst();
+        first.setContent("Changed");
+        first.setUseful(100);
+
+        assertThat(reviewStorage.getReviews(filmId, 10, null, null))
+                .extracting(Review::getContent, Review::getUseful)
+                .containsExactly(tuple("Review", 0));
+    }
+
+    private int createReview(int userId, int filmId) {
+        return reviewStorage.createReview(Review.builder()
+                .userId((long) userId)
+                .filmId(filmId)
+                .isPositive(true)
+                .content("Review")
+                .useful(0)
+                .build()).getReviewId();
+    }
+
+    private Film createTestFilm() {
+        return Film.builder()
+                .name("Film")
+                .description("Description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(120)
+                .mpa(new MpaRating(1, null))
+                .build();
+    }
+
+    private User createTestUser(int index) {
+        return User.builder()
+                .email("user" + index + "@mail.com")
+                .login("user" + index)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build();
+    }
+}
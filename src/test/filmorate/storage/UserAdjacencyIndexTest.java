@@ -0,0 +1,145 @@
+package filmorate.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.event.FriendshipChangedEvent;
+import ru.yandex.practicum.filmorate.storage.event.UserDeletedEvent;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserAdjacencyIndex;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@JdbcTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ContextConfiguration(classes = {FilmDbStorage.class, UserDbStorage.class, UserAdjacencyIndex.class})
+class UserAdjacencyIndexTest {
+    // Эталонные пересечения считаются прямо в базе
+    private static final String COMMON_FILMS_SQL = "SELECT l1.film_id FROM likes l1 " +
+            "JOIN likes l2 ON l1.film_id = l2.film_id AND l2.user_id = ? WHERE l1.user_id = ?";
+    private static final String COMMON_FRIENDS_SQL = "SELECT f1.friend_id FROM friendships f1 " +
+            "JOIN friendships f2 ON f1.friend_id = f2.friend_id AND f2.user_id = ? WHERE f1.user_id = ? " +
+            "ORDER BY f1.friend_id";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FilmDbStorage filmStorage;
+
+    @Autowired
+    private UserDbStorage userStorage;
+
+    @Autowired
+    private UserAdjacencyIndex index;
+
+    private final List<Integer> films = new ArrayList<>();
+    private final List<Long> users = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM film_genres");
+        jdbcTemplate.update("DELETE FROM likes");
+        jdbcTemplate.update("DELETE FROM friendships");
+        jdbcTemplate.update("DELETE FROM films");
+        jdbcTemplate.update("DELETE FROM users");
+        films.clear();
+        users.clear();
+        for (int i = 0; i < 10; i++) {
+            films.add(filmStorage.create(createTestFilm()).getId());
+            users.add(userStorage.create(createTestUser(i)).getId());
+        }
+        index.rebuild();
+    }
+
+    @Test
+    void shouldMatchSqlIntersections() {
+        Random random = new Random(7);
+        for (long userId : users) {
+            for (int i = 0; i < 5; i++) {
+                filmStorage.addLike(films.get(random.nextInt(films.size())), userId);
+                long friendId = users.get(random.nextInt(users.size()));
+                if (friendId != userId && !userStorage.isFriends(userId, friendId)) {
+                    userStorage.addFriend(userId, friendId);
+                }
+            }
+            filmStorage.removeLike(films.get(random.nextInt(films.size())), userId);
+            userStorage.removeFriend(userId, users.get(random.nextInt(users.size())));
+        }
+
+        for (long userId : users) {
+            for (long otherId : users) {
+                assertThat(index.commonFilms(userId, otherId)).containsExactlyInAnyOrderElementsOf(
+                        jdbcTemplate.queryForList(COMMON_FILMS_SQL, Integer.class, userId, otherId));
+                assertThat(index.commonFriends(userId, otherId)).containsExactlyElementsOf(
+                        jdbcTemplate.queryForList(COMMON_FRIENDS_SQL, Long.class, userId, otherId));
+            }
+        }
+    }
+
+    @Test
+    void shouldForgetDeletedFilmsAndUsers() {
+        long first = users.get(0);
+        long second = users.get(1);
+        long common = users.get(2);
+        filmStorage.addLike(films.get(0), first);
+        filmStorage.addLike(films.get(0), second);
+        filmStorage.addLike(films.get(1), first);
+        filmStorage.addLike(films.get(1), second);
+        userStorage.addFriend(first, common);
+        userStorage.addFriend(second, common);
+        assertThat(index.commonFilms(first, second)).containsExactly(films.get(0), films.get(1));
+        assertThat(index.commonFriends(first, second)).containsExactly(common);
+
+        filmStorage.deleteFilmById(films.get(0));
+        userStorage.delete(common);
+
+        assertThat(index.commonFilms(first, second)).containsExactly(films.get(1));
+        assertThat(index.commonFriends(first, second)).isEmpty();
+    }
+
+    @Test
+    void shouldHandleUserIdsBeyondIntRange() {
+        long first = 3_000_000_000L;
+        long second = 3_000_000_001L;
+        long common = 5_000_000_000L;
+        index.onFriendshipChanged(new FriendshipChangedEvent(first, common, true));
+        index.onFriendshipChanged(new FriendshipChangedEvent(second, common, true));
+        assertThat(index.commonFriends(first, second)).containsExactly(common);
+
+        index.onUserDeleted(new UserDeletedEvent(common));
+        assertThat(index.commonFriends(first, second)).isEmpty();
+    }
+
+    private Film createTestFilm() {
+        return Film.builder()
+                .name("Film")
+                .description("Description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(120)
+                .mpa(new MpaRating(1, null))
+                .build();
+    }
+
+    private User createTestUser(int index) {
+        return User.builder()
+                .email("user" + index + "@mail.com")
+                .login("user" + index)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build();
+    }
+}
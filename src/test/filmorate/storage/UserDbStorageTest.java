@@ -10,6 +10,7 @@ import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -65,6 +66,38 @@ class UserDbStorageTest {
                 .hasFieldOrPropertyWithValue("name", "New Name");
     }
 
+    @Test
+    void shouldKeepFriendsWhenUpdatedWithoutThem() {
+        User user = userStorage.create(createTestUser("user1@mail.com", "login1"));
+        User friend = userStorage.create(createTestUser("user2@mail.com", "login2"));
+        userStorage.addFriend(user.getId(), friend.getId());
+
+        user.setName("Renamed");
+        user.setFriends(null);
+        User result = userStorage.update(user);
+
+        assertThat(result.getName()).isEqualTo("Renamed");
+        assertThat(result.getFriends()).containsExactly(friend.getId());
+    }
+
+    @Test
+    void shouldStreamAndPageUsersInIdOrder() {
+        User user1 = userStorage.create(createTestUser("user1@mail.com", "login1"));
+        User user2 = userStorage.create(createTestUser("user2@mail.com", "login2"));
+        User user3 = userStorage.create(createTestUser("user3@mail.com", "login3"));
+        userStorage.addFriend(user1.getId(), user3.getId());
+
+        List<User> streamed = new ArrayList<>();
+        userStorage.streamAll(streamed::add);
+        assertThat(streamed).extracting(User::getId)
+                .containsExactly(user1.getId(), user2.getId(), user3.getId());
+        assertThat(streamed.get(0).getFriends()).containsExactly(user3.getId());
+
+        assertThat(userStorage.getPage(user1.getId(), 1))
+                .extracting(User::getId)
+                .containsExactly(user2.getId());
+    }
+
     @Test
     void shouldAddAndGetFriends() {
         User user1 = userStorage.create(createTestUser("user1@mail.com", "login1"));